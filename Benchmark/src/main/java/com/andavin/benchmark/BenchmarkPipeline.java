@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.benchmark;
+
+import com.andavin.protocol.PacketRateLimiter;
+import com.andavin.v1_13_R2.protocol.NetworkManagerProxy;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.minecraft.server.v1_13_R2.EnumProtocol;
+import net.minecraft.server.v1_13_R2.EnumProtocolDirection;
+import net.minecraft.server.v1_13_R2.NetworkManager;
+import net.minecraft.server.v1_13_R2.Packet;
+import net.minecraft.server.v1_13_R2.PacketDecoder;
+import net.minecraft.server.v1_13_R2.PacketEncoder;
+import net.minecraft.server.v1_13_R2.PacketPrepender;
+import net.minecraft.server.v1_13_R2.PacketSplitter;
+import org.bukkit.entity.Player;
+
+/**
+ * A pipeline on an {@link EmbeddedChannel} that is built the same
+ * way as the server connection proxy builds the pipeline of every
+ * connection ({@code splitter}, {@code limiter}, {@code decoder},
+ * {@code prepender}, {@code encoder} and {@code packet_handler}).
+ * <p>
+ * Every handler is the one that the server uses including the
+ * {@link NetworkManagerProxy} as the {@code packet_handler}. The
+ * {@code timeout} and {@code legacy_query} handlers are left out
+ * since they need a running server and never see a packet once
+ * the connection is in the {@code Play} protocol.
+ * <p>
+ * Stubbing the server classes here would only measure the stubs,
+ * which is why the benchmark depends on the real {@code spigot} JAR.
+ *
+ * @since July 25, 2019
+ * @author Andavin
+ */
+final class BenchmarkPipeline {
+
+    private BenchmarkPipeline() {
+    }
+
+    /**
+     * Create a new connection in the {@code Play} protocol that
+     * passes every packet to the given manager.
+     *
+     * @param manager The manager to pass the packets to.
+     * @param player The player to pass to the listeners.
+     * @param filter If packets that nothing listens to should skip
+     *               the manager or if every packet should be passed
+     *               to it (as before the packet filter existed).
+     * @return The network manager of the new connection.
+     */
+    static NetworkManagerProxy create(BenchmarkProtocolManager manager, Player player, boolean filter) {
+
+        NetworkManagerProxy networkManager = new NetworkManagerProxy(EnumProtocolDirection.SERVERBOUND,
+                (p, packet) -> manager.handle(p, packet, true), (p, packet) -> manager.handle(p, packet, false),
+                filter ? manager::shouldHandle : (id, packetClass) -> true, null, null, null) {
+
+            @Override
+            public Player getPlayer() {
+                return player; // There is no PlayerConnection to get the player from
+            }
+        };
+
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast("splitter", new PacketSplitter())
+                .addLast("limiter", new PacketRateLimiter(manager::getRateLimits, NetworkManager.c, EnumProtocol.PLAY))
+                .addLast("decoder", new PacketDecoder(EnumProtocolDirection.SERVERBOUND))
+                .addLast("prepender", new PacketPrepender())
+                .addLast("encoder", new PacketEncoder(EnumProtocolDirection.CLIENTBOUND))
+                .addLast("packet_handler", networkManager);
+
+        // The channel was already active before the handlers were added
+        channel.pipeline().fireChannelActive();
+        networkManager.setProtocol(EnumProtocol.PLAY);
+        networkManager.setPacketListener(StubServer.packetListener());
+        manager.initChannel(networkManager);
+        return networkManager;
+    }
+
+    /**
+     * Encode the given packet into a complete frame as it
+     * would be received from the client.
+     *
+     * @param packet The packet to encode.
+     * @return The encoded frame.
+     */
+    static ByteBuf encodeFrame(Packet<?> packet) {
+
+        EmbeddedChannel channel = new EmbeddedChannel(new PacketPrepender(),
+                new PacketEncoder(EnumProtocolDirection.SERVERBOUND));
+        channel.attr(NetworkManager.c).set(EnumProtocol.PLAY);
+        channel.writeOutbound(packet);
+        ByteBuf frame = (ByteBuf) channel.readOutbound();
+        channel.finish();
+        return frame;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.benchmark;
+
+import com.andavin.protocol.PacketRateLimiter;
+import com.andavin.protocol.ProtocolManager;
+import com.andavin.protocol.StatusResponseCache;
+import com.andavin.v1_13_R2.protocol.NetworkManagerProxy;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.minecraft.server.v1_13_R2.EnumProtocol;
+import net.minecraft.server.v1_13_R2.EnumProtocolDirection;
+import net.minecraft.server.v1_13_R2.NetworkManager;
+import net.minecraft.server.v1_13_R2.Packet;
+import net.minecraft.server.v1_13_R2.PacketDecoder;
+import net.minecraft.server.v1_13_R2.PacketDecompressor;
+import net.minecraft.server.v1_13_R2.PacketStatusInStart;
+import org.bukkit.entity.Player;
+import org.bukkit.event.server.ServerListPingEvent;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link ProtocolManager} that is not bound to a server
+ * connection. Instead, it manages the connection that is created
+ * by the {@link BenchmarkPipeline} the same way that the manager
+ * of a real server manages every connection.
+ *
+ * @since July 25, 2019
+ * @author Andavin
+ */
+final class BenchmarkProtocolManager extends ProtocolManager {
+
+    private final StatusResponseCache statusCache = new StatusResponseCache(NetworkManager.c,
+            EnumProtocol.HANDSHAKING, EnumProtocol.STATUS, PacketStatusInStart.class, () -> "Benchmark",
+            () -> 0, address -> new ServerListPingEvent(address, "Benchmark", 0, 0));
+    private volatile PacketRateLimiter.Settings rateLimits;
+    private volatile Map<Class<?>, Function<Object, Object>> coalesceKeys;
+    private volatile Consumer<Channel> channelInitializer;
+    private volatile NetworkManagerProxy networkManager;
+
+    /**
+     * Pass the given packet to the listeners. This is called by
+     * the {@link NetworkManagerProxy} only if the packet
+     * {@link #shouldHandle(UUID, Class) should be handled}.
+     *
+     * @param player The player the packet is sent to or from.
+     * @param packet The packet to handle.
+     * @param inbound If the packet is received from the player.
+     * @return The packet after it has been handled.
+     */
+    Packet handle(Player player, Packet packet, boolean inbound) {
+        return (Packet) this.call(player, packet, inbound);
+    }
+
+    /**
+     * Tell if the given packet class needs to be passed to the
+     * manager (i.e. if anything is listening for it).
+     *
+     * @param player The UUID of the player of the connection.
+     * @param packetClass The class of the packet.
+     * @return If the packet needs to be passed to the manager.
+     */
+    boolean shouldHandle(UUID player, Class<?> packetClass) {
+        return this.isListening(player, packetClass);
+    }
+
+    /**
+     * Get the rate limits that are currently set.
+     *
+     * @return The rate limits or {@code null} if there are none.
+     */
+    PacketRateLimiter.Settings getRateLimits() {
+        return this.rateLimits;
+    }
+
+    /**
+     * Set up the given network manager once its pipeline has been
+     * built in the same way as the server connection proxy does.
+     *
+     * @param networkManager The network manager of the new connection.
+     */
+    void initChannel(NetworkManagerProxy networkManager) {
+
+        this.setCoalesceKeys(networkManager, this.coalesceKeys);
+        this.networkManager = networkManager;
+        Consumer<Channel> initializer = this.channelInitializer;
+        if (initializer != null) {
+            initializer.accept(networkManager.channel);
+        }
+    }
+
+    @Override
+    public StatusResponseCache getStatusCache() {
+        return this.statusCache;
+    }
+
+    @Override
+    protected void sendDirect(Player player, Object packet) {
+
+        NetworkManagerProxy networkManager = this.networkManager;
+        if (networkManager != null) {
+            networkManager.dispatch((Packet) packet);
+        }
+    }
+
+    @Override
+    protected int getPacketId(Class<?> packetClass) {
+
+        try {
+            Integer id = EnumProtocol.PLAY.a(EnumProtocolDirection.SERVERBOUND, (Packet) packetClass.newInstance());
+            return id != null ? id : -1;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    protected void setRateLimits(PacketRateLimiter.Settings settings) {
+        this.rateLimits = settings;
+    }
+
+    @Override
+    protected Function<Object, Object> getCoalesceKey(Class<?> packetClass) {
+        return null;
+    }
+
+    @Override
+    protected void setCoalesceKeys(Map<Class<?>, Function<Object, Object>> keys) {
+
+        this.coalesceKeys = keys;
+        NetworkManagerProxy networkManager = this.networkManager;
+        if (networkManager != null) {
+            this.setCoalesceKeys(networkManager, keys);
+        }
+    }
+
+    @Override
+    protected Channel getChannel(Player player) {
+        NetworkManagerProxy networkManager = this.networkManager;
+        return networkManager != null ? networkManager.channel : null;
+    }
+
+    @Override
+    protected Player getPlayer(Channel channel) {
+        Object handler = channel.pipeline().get("packet_handler");
+        return handler instanceof NetworkManagerProxy ? ((NetworkManagerProxy) handler).getPlayer() : null;
+    }
+
+    @Override
+    protected long[] getChunks(Object packet) {
+        return null;
+    }
+
+    @Override
+    protected EmbeddedChannel createReplayChannel(boolean outbound, boolean compressed) {
+
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.attr(NetworkManager.c).set(EnumProtocol.PLAY);
+        if (compressed) {
+            // A threshold of 0 accepts every compressed frame
+            channel.pipeline().addLast("decompress", new PacketDecompressor(0));
+        }
+
+        channel.pipeline().addLast("decoder", new PacketDecoder(outbound ?
+                EnumProtocolDirection.CLIENTBOUND : EnumProtocolDirection.SERVERBOUND));
+        return channel;
+    }
+
+    @Override
+    protected void setChannelInitializer(Consumer<Channel> initializer) {
+        this.channelInitializer = initializer;
+    }
+
+    @Override
+    protected void forEachChannel(Consumer<Channel> action) {
+
+        NetworkManagerProxy networkManager = this.networkManager;
+        if (networkManager != null && networkManager.channel.isOpen()) {
+            action.accept(networkManager.channel);
+        }
+    }
+
+    private void setCoalesceKeys(NetworkManagerProxy networkManager, Map<Class<?>, Function<Object, Object>> keys) {
+        networkManager.coalesceKeys = (Map) keys;
+        networkManager.coalesceChunks = keys != null ? this::getChunks : null;
+    }
+}
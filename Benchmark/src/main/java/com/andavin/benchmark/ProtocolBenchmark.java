@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.benchmark;
+
+import com.andavin.v1_13_R2.protocol.NetworkManagerProxy;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.minecraft.server.v1_13_R2.Packet;
+import net.minecraft.server.v1_13_R2.PacketPlayInFlying.PacketPlayInPosition;
+import net.minecraft.server.v1_13_R2.PacketPlayInKeepAlive;
+import net.minecraft.server.v1_13_R2.PacketPlayOutEntityTeleport;
+import net.minecraft.server.v1_13_R2.PacketPlayOutKeepAlive;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the cost of a single packet passing through the
+ * pipeline of a connection with a varying amount of registered
+ * {@link com.andavin.protocol.PacketListener}s.
+ * <p>
+ * Every invocation passes a mix of one packet that is listened to
+ * ({@code PacketPlayInPosition} or {@code PacketPlayOutEntityTeleport})
+ * and one packet that nothing listens to ({@code PacketPlayInKeepAlive}
+ * or {@code PacketPlayOutKeepAlive}) through the real server codec and
+ * {@link NetworkManagerProxy}. The {@code unlistened} benchmarks only
+ * pass the packet that nothing listens to and {@link #filter} compares
+ * them with and without the packet filter of the proxy that lets those
+ * packets skip the protocol manager entirely.
+ * <p>
+ * This runs headless without a server using {@link StubServer stubs}
+ * for the Bukkit server and the player. The packets, codec and proxy
+ * are not stubbed since they are what is being measured, so building
+ * it needs the {@code spigot} 1.13.2 JAR that BuildTools installs to
+ * the local Maven repository (which the {@code v1_13_R2} module needs
+ * anyway). Build and run it with the following (the GC profiler
+ * reports the allocation rate per packet):
+ * <pre>
+ *     mvn -Pbenchmark package
+ *     java -jar Benchmark/target/benchmarks.jar -prof gc
+ * </pre>
+ *
+ * @since July 25, 2019
+ * @author Andavin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBenchmark {
+
+    @Param({ "0", "1", "10", "100" })
+    public int listeners;
+
+    @Param({ "true", "false" })
+    public boolean filter;
+
+    private BenchmarkProtocolManager manager;
+    private NetworkManagerProxy networkManager;
+    private EmbeddedChannel channel;
+    private ByteBuf listenedFrame, unlistenedFrame;
+    private Packet<?> listenedPacket, unlistenedPacket;
+
+    @Setup
+    public void setup() {
+
+        StubServer.install();
+        this.manager = new BenchmarkProtocolManager();
+        for (int i = 0; i < this.listeners; i++) {
+            int index = i; // Capture so that every listener is a separate instance
+            this.manager.register(PacketPlayInPosition.class, (player, in) -> index >= 0 ? in : null);
+            this.manager.register(PacketPlayOutEntityTeleport.class, (player, out) -> index >= 0 ? out : null);
+        }
+
+        this.networkManager = BenchmarkPipeline.create(this.manager, StubServer.player(), this.filter);
+        this.channel = (EmbeddedChannel) this.networkManager.channel;
+        this.listenedFrame = BenchmarkPipeline.encodeFrame(new PacketPlayInPosition());
+        this.unlistenedFrame = BenchmarkPipeline.encodeFrame(new PacketPlayInKeepAlive());
+        this.listenedPacket = new PacketPlayOutEntityTeleport();
+        this.unlistenedPacket = new PacketPlayOutKeepAlive();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.channel.finish();
+        this.listenedFrame.release();
+        this.unlistenedFrame.release();
+        this.manager.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void inbound() {
+        this.channel.writeInbound(this.listenedFrame.duplicate().retain());
+        this.channel.writeInbound(this.unlistenedFrame.duplicate().retain());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public int outbound() {
+
+        this.networkManager.sendPacket(this.listenedPacket);
+        this.networkManager.sendPacket(this.unlistenedPacket);
+        return this.readOutbound() + this.readOutbound();
+    }
+
+    @Benchmark
+    public void inboundUnlistened() {
+        this.channel.writeInbound(this.unlistenedFrame.duplicate().retain());
+    }
+
+    @Benchmark
+    public int outboundUnlistened() {
+        this.networkManager.sendPacket(this.unlistenedPacket);
+        return this.readOutbound();
+    }
+
+    private int readOutbound() {
+
+        ByteBuf buf = (ByteBuf) this.channel.readOutbound();
+        int size = buf.readableBytes();
+        buf.release();
+        return size;
+    }
+}
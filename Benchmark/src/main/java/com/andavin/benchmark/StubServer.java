@@ -0,0 +1,175 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.benchmark;
+
+import net.minecraft.server.v1_13_R2.PacketListenerPlayIn;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Stubs of the Bukkit {@link Server}, a {@link Player} and the
+ * {@link PacketListenerPlayIn} of a connection so that the protocol
+ * classes can be run without a real server.
+ * <p>
+ * Every method of the stubs returns the default value for its
+ * return type unless it is needed by the protocol classes.
+ *
+ * @since July 25, 2019
+ * @author Andavin
+ */
+final class StubServer {
+
+    private static final UUID PLAYER_ID = new UUID(0, 1);
+
+    private StubServer() {
+    }
+
+    /**
+     * Install the stub server as the Bukkit server if
+     * no server has been set yet.
+     */
+    static synchronized void install() {
+
+        if (Bukkit.getServer() != null) {
+            return;
+        }
+
+        Logger logger = Logger.getLogger("NMSUtils Benchmark");
+        Bukkit.setServer(stub(Server.class, (method, args) -> {
+
+            switch (method.getName()) {
+                case "getLogger":
+                    return logger;
+                case "getName":
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "Benchmark";
+                default:
+                    return null;
+            }
+        }));
+    }
+
+    /**
+     * Create a new stub player. The player is never on the main
+     * thread and is only able to return its name and UUID.
+     *
+     * @return The new stub player.
+     */
+    static Player player() {
+
+        return stub(Player.class, (method, args) -> {
+
+            switch (method.getName()) {
+                case "getName":
+                    return "Benchmark";
+                case "getUniqueId":
+                    return PLAYER_ID;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * Create a new stub packet listener that ignores
+     * every packet it is given.
+     *
+     * @return The new stub packet listener.
+     */
+    static PacketListenerPlayIn packetListener() {
+        return stub(PacketListenerPlayIn.class, (method, args) -> null);
+    }
+
+    private static <T> T stub(Class<T> type, Handler handler) {
+
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[]{ type }, (proxy, method, args) -> {
+
+            if (method.getDeclaringClass() == Object.class) {
+
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return type.getSimpleName() + "Stub";
+                }
+            }
+
+            Object value = handler.handle(method, args);
+            return value != null ? value : defaultValue(method.getReturnType());
+        }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+
+        if (type == boolean.class) {
+            return false;
+        }
+
+        if (type == char.class) {
+            return '\0';
+        }
+
+        if (type == long.class) {
+            return 0L;
+        }
+
+        if (type == float.class) {
+            return 0F;
+        }
+
+        if (type == double.class) {
+            return 0D;
+        }
+
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+
+        if (type == short.class) {
+            return (short) 0;
+        }
+
+        return 0;
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+
+        Object handle(Method method, Object[] args);
+    }
+}
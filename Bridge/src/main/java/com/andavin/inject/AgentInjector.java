@@ -0,0 +1,460 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.inject;
+
+import com.andavin.Versioned;
+import com.andavin.reflect.exception.UncheckedReflectiveOperationException;
+import com.andavin.util.Logger;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+
+import java.io.*;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.jar.*;
+import java.util.regex.Pattern;
+
+import static com.andavin.reflect.Reflection.findMethod;
+import static com.andavin.reflect.Reflection.invokeMethod;
+
+/**
+ * Injects into the server at runtime via {@link Instrumentation}
+ * rather than rewriting the server JAR.
+ * <p>
+ * The {@link Injector}s are applied by this {@link ClassFileTransformer}
+ * as the classes are loaded or, if they are already loaded, by
+ * retransforming them. The classes that would be written to the
+ * server JAR are instead defined directly in the server class loader.
+ * <p>
+ * Classes that are injected from a plugin must be defined in the
+ * server class loader before the plugin loads them itself, or else
+ * there would be two separate versions of the class. For that reason
+ * they are {@link #defineClasses(Instrumentation, ClassLoader, File)
+ * defined} as soon as the agent is attached and this class must not
+ * load any injected class (including {@link InjectorVersion}) itself.
+ *
+ * @since July 27, 2019
+ * @author Andavin
+ */
+final class AgentInjector implements ClassFileTransformer {
+
+    private static final String AGENT_JAR = "nmsutils-agent.jar";
+    private static final String INJECTOR_VERSION = "com/andavin/inject/InjectorVersion";
+    private static final String BYTE_CLASS_INJECTOR = "com/andavin/inject/ByteClassInjector";
+    private static final byte[] INJECTOR_VERSION_DESC = ('L' + INJECTOR_VERSION + ';').getBytes();
+    private static final Pattern VERSION_PACKAGE = Pattern.compile("com/andavin/v\\d+_\\d+_R\\d+/.*");
+
+    private final Map<String, Injector> injectors;
+
+    private AgentInjector(Map<String, Injector> injectors) {
+        this.injectors = injectors;
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+
+        Injector injector = className != null ? this.injectors.get(className) : null;
+        if (injector == null) {
+            return null;
+        }
+
+        byte[] bytes = MinecraftInjector.transform(new ClassReader(classfileBuffer), injector);
+        if (bytes != null) {
+            Logger.debug("Class {} has been altered successfully.", className);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Tell if the {@link InjectionAgent} has already been loaded
+     * (e.g. with {@code -javaagent} at startup).
+     *
+     * @return If the agent is loaded.
+     */
+    static boolean isLoaded() {
+        return System.getProperties().get(InjectionAgent.PROPERTY) instanceof Instrumentation;
+    }
+
+    /**
+     * Get the {@link Instrumentation} from the {@link InjectionAgent}
+     * attaching it to the running JVM if it was not loaded at startup.
+     *
+     * @param directory The directory to write the agent JAR to.
+     * @return The instrumentation or {@code null} if the agent
+     *         could not be attached.
+     */
+    static Instrumentation attach(File directory) {
+
+        Object instrumentation = System.getProperties().get(InjectionAgent.PROPERTY);
+        if (instrumentation == null) {
+
+            File agentJar = new File(directory, AGENT_JAR);
+            try {
+
+                // Rewrite the JAR if it was written by a different version of the plugin
+                byte[] agentClass = readAgentClass();
+                if (!isCurrent(agentJar, agentClass)) {
+                    writeAgentJar(agentJar, agentClass);
+                }
+
+                loadAgent(agentJar);
+            } catch (IOException | LinkageError | ReflectiveOperationException | UncheckedReflectiveOperationException e) {
+                Logger.info("Could not attach the injection agent ({}). Add -javaagent:{} to the startup " +
+                            "flags to inject without restarting.", e, agentJar.getPath());
+                return null;
+            }
+
+            instrumentation = System.getProperties().get(InjectionAgent.PROPERTY);
+        }
+
+        return instrumentation instanceof Instrumentation ? (Instrumentation) instrumentation : null;
+    }
+
+    /**
+     * Define every class in the given plugin JAR that is annotated
+     * with {@link InjectorVersion} (along with its nested classes)
+     * in the server class loader.
+     * <p>
+     * Classes that belong to a different Minecraft version package
+     * and {@link ByteClassInjector}s are skipped.
+     *
+     * @param instrumentation The instrumentation to use.
+     * @param loader The server class loader to define the classes in.
+     * @param pluginJar The plugin JAR to define the classes from.
+     * @return If all of the classes were defined or were already
+     *         loaded with the same version.
+     * @throws IOException If the plugin JAR could not be read.
+     */
+    static boolean defineClasses(Instrumentation instrumentation, ClassLoader loader, File pluginJar) throws IOException {
+
+        String current = Versioned.VERSION_PREFIX.replace('.', '/') + '/';
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        try (JarFile jar = new JarFile(pluginJar)) {
+
+            if (loader.getResource(INJECTOR_VERSION + ".class") == null) {
+                classes.put(INJECTOR_VERSION, MinecraftInjector.read(jar, jar.getJarEntry(INJECTOR_VERSION + ".class")));
+            }
+
+            List<JarEntry> entries = Collections.list(jar.entries());
+            Set<String> injected = new HashSet<>();
+            for (JarEntry entry : entries) {
+
+                String name = entry.getName();
+                if (!name.startsWith("com/andavin/") || !name.endsWith(".class") || name.indexOf('$') != -1 ||
+                        VERSION_PACKAGE.matcher(name).matches() && !name.startsWith(current)) {
+                    continue;
+                }
+
+                byte[] bytes = MinecraftInjector.read(jar, entry);
+                if (contains(bytes, INJECTOR_VERSION_DESC) && MinecraftInjector.readVersion(bytes) != null &&
+                        !BYTE_CLASS_INJECTOR.equals(new ClassReader(bytes).getSuperName())) {
+                    String internalName = name.substring(0, name.length() - 6);
+                    injected.add(internalName);
+                    classes.put(internalName, bytes);
+                }
+            }
+
+            for (JarEntry entry : entries) {
+
+                String name = entry.getName();
+                int index = name.indexOf('$');
+                if (index != -1 && name.endsWith(".class") && injected.contains(name.substring(0, index))) {
+                    classes.put(name.substring(0, name.length() - 6), MinecraftInjector.read(jar, entry));
+                }
+            }
+        }
+
+        return define(instrumentation, loader, classes);
+    }
+
+    /**
+     * Inject at runtime by defining all of the {@link ByteClassInjector}
+     * classes and registering the {@link Injector}s to be applied as
+     * classes are loaded and retransforming any that already are.
+     *
+     * @param instrumentation The instrumentation to use.
+     * @param loader The server class loader.
+     * @param injectors The injectors by the name of the entry of
+     *                  the class that they inject into.
+     * @param classes The classes that should be injected.
+     * @param byteClasses The byte classes that should be injected.
+     * @return If everything was injected successfully.
+     */
+    static boolean inject(Instrumentation instrumentation, ClassLoader loader, Map<String, Injector> injectors,
+                          Set<Class<?>> classes, List<ByteClassInjector> byteClasses) {
+
+        for (Class<?> clazz : classes) {
+
+            if (clazz.getClassLoader() != loader) {
+                Logger.debug("Class {} was not loaded by the server. Falling back to rewriting the JAR.", clazz.getName());
+                return false;
+            }
+        }
+
+        if (!instrumentation.isRetransformClassesSupported()) {
+            Logger.debug("Retransforming classes is not supported. Falling back to rewriting the JAR.");
+            return false;
+        }
+
+        Map<String, Injector> targets = new HashMap<>((int) (injectors.size() / 0.75));
+        injectors.forEach((name, injector) -> targets.put(name.substring(0, name.length() - 6), injector));
+        List<Class<?>> loaded = new ArrayList<>(targets.size());
+        for (Class<?> clazz : instrumentation.getAllLoadedClasses()) {
+
+            Injector injector = targets.get(Type.getInternalName(clazz));
+            if (injector != null && clazz.getClassLoader() == loader) {
+
+                if (!injector.canRetransform()) {
+                    Logger.debug("Class {} is already loaded and cannot be retransformed. " +
+                                 "Falling back to rewriting the JAR.", clazz.getName());
+                    return false;
+                }
+
+                loaded.add(clazz);
+            }
+        }
+
+        Map<String, byte[]> definitions = new LinkedHashMap<>();
+        try {
+
+            for (ByteClassInjector injector : byteClasses) {
+                definitions.put(injector.getInternalName(), injector.getBytes());
+            }
+        } catch (IOException e) {
+            Logger.severe(e, "Failed to write byte classes.");
+            return false;
+        }
+
+        if (!define(instrumentation, loader, definitions)) {
+            return false;
+        }
+
+        AgentInjector transformer = new AgentInjector(targets);
+        instrumentation.addTransformer(transformer, true);
+        if (!loaded.isEmpty()) {
+
+            try {
+                instrumentation.retransformClasses(loaded.toArray(new Class<?>[0]));
+            } catch (Exception | LinkageError e) {
+                instrumentation.removeTransformer(transformer);
+                Logger.severe(e, "Failed to retransform classes. Falling back to rewriting the JAR.");
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean define(Instrumentation instrumentation, ClassLoader loader, Map<String, byte[]> classes) {
+
+        Map<String, Class<?>> loaded = new HashMap<>();
+        for (Class<?> clazz : instrumentation.getInitiatedClasses(loader)) {
+            loaded.put(Type.getInternalName(clazz), clazz);
+        }
+
+        Iterator<Entry<String, byte[]>> itr = classes.entrySet().iterator();
+        while (itr.hasNext()) {
+
+            Entry<String, byte[]> entry = itr.next();
+            Class<?> clazz = loaded.get(entry.getKey());
+            if (clazz != null) {
+
+                if (clazz.getClassLoader() != loader || !Objects.equals(
+                        readVersion(clazz), MinecraftInjector.readVersion(entry.getValue()))) {
+                    Logger.debug("An older version of class {} is already loaded. " +
+                                 "Falling back to rewriting the JAR.", entry.getKey());
+                    return false;
+                }
+
+                itr.remove(); // Already loaded with the same version
+            }
+        }
+
+        // Classes that extend another that is being defined will
+        // fail until the class that they extend is defined first
+        Method define = findMethod(ClassLoader.class, "defineClass", false,
+                String.class, byte[].class, int.class, int.class);
+        for (boolean defined = true; defined && !classes.isEmpty(); ) {
+
+            defined = false;
+            itr = classes.entrySet().iterator();
+            while (itr.hasNext()) {
+
+                Entry<String, byte[]> entry = itr.next();
+                byte[] bytes = entry.getValue();
+                try {
+                    invokeMethod(define, loader, entry.getKey().replace('/', '.'), bytes, 0, bytes.length);
+                    Logger.debug("Defined class {} in the server class loader.", entry.getKey());
+                    itr.remove();
+                    defined = true;
+                } catch (RuntimeException e) { // Including the class loader not being accessible
+
+                    if (!(e.getCause() instanceof NoClassDefFoundError)) {
+                        Logger.severe(e, "Failed to define class {}. Falling back to rewriting the JAR.", entry.getKey());
+                        return false;
+                    }
+                }
+            }
+        }
+
+        if (!classes.isEmpty()) {
+            Logger.severe("Failed to define classes {}. Falling back to rewriting the JAR.", classes.keySet());
+            return false;
+        }
+
+        return true;
+    }
+
+    private static String readVersion(Class<?> clazz) {
+
+        String name = Type.getInternalName(clazz) + ".class";
+        ClassLoader loader = clazz.getClassLoader();
+        try (InputStream input = loader != null ? loader.getResourceAsStream(name) : null) {
+
+            if (input == null) {
+                return null;
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) != -1) {
+                output.write(buffer, 0, bytesRead);
+            }
+
+            return MinecraftInjector.readVersion(output.toByteArray());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean contains(byte[] bytes, byte[] search) {
+
+        outer:
+        for (int i = 0; i <= bytes.length - search.length; i++) {
+
+            for (int j = 0; j < search.length; j++) {
+
+                if (bytes[i + j] != search[j]) {
+                    continue outer;
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private static boolean isCurrent(File file, byte[] agentClass) {
+
+        if (!file.isFile()) {
+            return false;
+        }
+
+        try (JarFile jar = new JarFile(file)) {
+            JarEntry entry = jar.getJarEntry(Type.getInternalName(InjectionAgent.class) + ".class");
+            return entry != null && createManifest().equals(jar.getManifest()) &&
+                    Arrays.equals(agentClass, MinecraftInjector.read(jar, entry));
+        } catch (IOException e) {
+            return false; // Corrupt, so write it again
+        }
+    }
+
+    private static void writeAgentJar(File file, byte[] agentClass) throws IOException {
+
+        file.getParentFile().mkdirs();
+        try (JarOutputStream output = new JarOutputStream(new FileOutputStream(file), createManifest())) {
+            output.putNextEntry(new JarEntry(Type.getInternalName(InjectionAgent.class) + ".class"));
+            output.write(agentClass);
+            output.closeEntry();
+        }
+    }
+
+    private static Manifest createManifest() {
+
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Premain-Class", InjectionAgent.class.getName());
+        attributes.putValue("Agent-Class", InjectionAgent.class.getName());
+        attributes.putValue("Can-Retransform-Classes", "true");
+        return manifest;
+    }
+
+    private static byte[] readAgentClass() throws IOException {
+
+        String name = Type.getInternalName(InjectionAgent.class) + ".class";
+        try (InputStream input = InjectionAgent.class.getClassLoader().getResourceAsStream(name)) {
+
+            if (input == null) {
+                throw new FileNotFoundException(name);
+            }
+
+            byte[] buffer = new byte[4096];
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) != -1) {
+                output.write(buffer, 0, bytesRead);
+            }
+
+            return output.toByteArray();
+        }
+    }
+
+    private static void loadAgent(File agentJar) throws IOException, ReflectiveOperationException {
+
+        Class<?> vmClass;
+        try {
+            vmClass = Class.forName("com.sun.tools.attach.VirtualMachine");
+        } catch (ClassNotFoundException e) { // Java 8 keeps the attach API in the tools JAR of the JDK
+
+            File tools = new File(System.getProperty("java.home"), "../lib/tools.jar");
+            if (!tools.exists()) {
+                throw e;
+            }
+
+            ClassLoader loader = new URLClassLoader(new URL[]{ tools.toURI().toURL() }, null);
+            vmClass = Class.forName("com.sun.tools.attach.VirtualMachine", true, loader);
+        }
+
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        Object vm = vmClass.getMethod("attach", String.class).invoke(null, name.substring(0, name.indexOf('@')));
+        try {
+            vmClass.getMethod("loadAgent", String.class).invoke(vm, agentJar.getAbsolutePath());
+        } finally {
+            vmClass.getMethod("detach").invoke(vm);
+        }
+    }
+}
@@ -28,7 +28,9 @@ import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * An injector specifically designed for injecting classes
@@ -45,6 +47,11 @@ import java.io.IOException;
  * any way, an error will not be thrown here and instead will be
  * given during runtime when the class is referenced or not at all
  * if the class exists elsewhere as a functioning version.
+ * <p>
+ * The bytes are normally {@link InjectionPrecompiler precompiled}
+ * during the build and stored as a resource next to the injector so
+ * that they do not need to be written when the server starts. If the
+ * resource does not exist, then the class is {@link #dump() dumped}.
  *
  * @see InjectorVersion
  * @since January 23, 2019
@@ -52,6 +59,12 @@ import java.io.IOException;
  */
 public abstract class ByteClassInjector implements Injector { // implement simply for ease of access to static fields
 
+    /**
+     * The directory that the precompiled bytes of each class are
+     * stored within by the internal name of the class.
+     */
+    static final String RESOURCE_PREFIX = "META-INF/nmsutils/injections/";
+
     private final String internalName, version;
 
     /**
@@ -99,6 +112,33 @@ public abstract class ByteClassInjector implements Injector { // implement simpl
         return version;
     }
 
+    /**
+     * Get the bytes of the class to inject from its precompiled
+     * resource if it exists or otherwise {@link #dump() dump} them.
+     *
+     * @return The bytes for the class to inject.
+     * @throws IOException If the bytes could not be read or written.
+     */
+    byte[] getBytes() throws IOException {
+
+        try (InputStream input = this.getClass().getClassLoader()
+                .getResourceAsStream(RESOURCE_PREFIX + this.internalName + ".class")) {
+
+            if (input == null) {
+                return this.dump();
+            }
+
+            byte[] buffer = new byte[4096];
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) != -1) {
+                output.write(buffer, 0, bytesRead);
+            }
+
+            return output.toByteArray();
+        }
+    }
+
     /**
      * Write the version of the injector class to the given
      * {@link ClassWriter} so that it will be visible on the end class.
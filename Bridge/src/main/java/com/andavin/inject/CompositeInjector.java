@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.inject;
+
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An {@link Injector} that applies multiple injectors that
+ * are registered for the same class in the order that they
+ * were registered.
+ *
+ * @since August 01, 2019
+ * @author Andavin
+ */
+final class CompositeInjector implements Injector {
+
+    private final List<Injector> injectors;
+
+    CompositeInjector(Injector first, Injector second) {
+        this.injectors = Arrays.asList(first, second);
+    }
+
+    /**
+     * Get the injectors that are applied by this injector.
+     *
+     * @return The injectors.
+     */
+    List<Injector> getInjectors() {
+        return injectors;
+    }
+
+    @Override
+    public boolean inject(ClassNode node) {
+
+        boolean altered = false;
+        for (Injector injector : this.injectors) {
+            altered |= injector.inject(node);
+        }
+
+        return altered;
+    }
+
+    @Override
+    public boolean canRetransform() {
+
+        for (Injector injector : this.injectors) {
+
+            if (!injector.canRetransform()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.inject;
+
+import java.lang.instrument.Instrumentation;
+
+/**
+ * The Java agent that provides the {@link Instrumentation} used to
+ * inject into the server at runtime rather than by rewriting the
+ * server JAR and restarting.
+ * <p>
+ * The agent is only attached to the running server if it is started
+ * with {@code -Dnmsutils.agent=true}, which also writes the agent JAR
+ * to the data folder of the plugin. If the JVM does not allow attaching
+ * to itself (Java 9+ without {@code -Djdk.attach.allowAttachSelf=true}
+ * or a JRE without the attach API), that JAR can instead be loaded
+ * at startup:
+ * <pre>
+ *     java -javaagent:plugins/NMSUtils/nmsutils-agent.jar -jar server.jar
+ * </pre>
+ * This class is written into the agent JAR on its own and therefore
+ * must not reference anything outside of the JDK. The instrumentation
+ * is passed on through the system properties since the agent is loaded
+ * by a different class loader than the plugin.
+ *
+ * @since July 27, 2019
+ * @author Andavin
+ */
+public final class InjectionAgent {
+
+    /**
+     * The key of the system property that holds the
+     * {@link Instrumentation} once the agent is loaded.
+     */
+    public static final String PROPERTY = "com.andavin.inject.instrumentation";
+
+    private InjectionAgent() {
+    }
+
+    /**
+     * Called when the agent is loaded at startup
+     * via the {@code -javaagent} option.
+     *
+     * @param args The arguments given to the agent.
+     * @param instrumentation The instrumentation for the JVM.
+     */
+    public static void premain(String args, Instrumentation instrumentation) {
+        agentmain(args, instrumentation);
+    }
+
+    /**
+     * Called when the agent is attached to the running JVM.
+     *
+     * @param args The arguments given to the agent.
+     * @param instrumentation The instrumentation for the JVM.
+     */
+    public static void agentmain(String args, Instrumentation instrumentation) {
+        System.getProperties().put(PROPERTY, instrumentation);
+    }
+}
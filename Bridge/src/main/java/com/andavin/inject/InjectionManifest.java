@@ -0,0 +1,230 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.inject;
+
+import com.andavin.inject.mixin.MixinInjector;
+import com.andavin.util.Logger;
+import org.bukkit.plugin.Plugin;
+import org.objectweb.asm.Type;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.StringJoiner;
+
+/**
+ * A small manifest that is kept next to the server JAR and records
+ * the state of the JAR after the last injection check along with all
+ * of the injectors and injected classes that it was checked against.
+ * <p>
+ * If nothing has changed since the last check, then the manifest
+ * {@link #matches(File) matches} and the server JAR does not need to
+ * be scanned at all. The server JAR is identified by its size and last
+ * modified time and only if those have changed is it hashed to make
+ * sure that its contents have actually changed.
+ *
+ * @since July 28, 2019
+ * @author Andavin
+ */
+final class InjectionManifest {
+
+    private static final String SIZE = "jar.size", MODIFIED = "jar.modified", HASH = "jar.sha1";
+
+    private final File file;
+    private final Properties expected = new Properties();
+
+    /**
+     * Create a new manifest for the current injections.
+     *
+     * @param file The file that the manifest is kept in.
+     * @param injectors The injectors by the name of the entry of
+     *                  the class that they inject into.
+     * @param classes The classes that are injected.
+     * @param byteClasses The byte classes that are injected.
+     */
+    InjectionManifest(File file, Map<String, Injector> injectors,
+                      Map<Class<?>, Plugin> classes, List<ByteClassInjector> byteClasses) {
+
+        this.file = file;
+        for (Entry<String, Injector> entry : injectors.entrySet()) {
+            this.expected.setProperty("injector." + entry.getKey(), describe(entry.getValue()));
+        }
+
+        for (Class<?> clazz : classes.keySet()) {
+            this.expected.setProperty("class." + clazz.getName(), clazz.getDeclaredAnnotation(InjectorVersion.class).value());
+        }
+
+        for (ByteClassInjector injector : byteClasses) {
+            this.expected.setProperty("byte." + injector.getInternalName(), injector.getVersion());
+        }
+    }
+
+    /**
+     * Tell if this manifest matches the one that was last
+     * {@link #save(File) saved} and the server JAR has not
+     * changed since then.
+     *
+     * @param jar The server JAR.
+     * @return If no injections need to be checked.
+     */
+    boolean matches(File jar) {
+
+        if (!this.file.exists()) {
+            return false;
+        }
+
+        Properties saved = new Properties();
+        try (InputStream input = new FileInputStream(this.file)) {
+            saved.load(input);
+        } catch (IOException e) {
+            Logger.debug(e, "Failed to read injection manifest {}.", this.file.getName());
+            return false;
+        }
+
+        if (saved.size() != this.expected.size() + 3) {
+            return false;
+        }
+
+        for (String key : this.expected.stringPropertyNames()) {
+
+            if (!this.expected.getProperty(key).equals(saved.getProperty(key))) {
+                Logger.debug("Injection manifest entry {} has changed.", key);
+                return false;
+            }
+        }
+
+        if (String.valueOf(jar.length()).equals(saved.getProperty(SIZE)) &&
+                String.valueOf(jar.lastModified()).equals(saved.getProperty(MODIFIED))) {
+            return true;
+        }
+
+        // The JAR may have been touched without being changed
+        try {
+
+            if (hash(jar).equals(saved.getProperty(HASH))) {
+                this.save(jar, saved.getProperty(HASH));
+                return true;
+            }
+        } catch (IOException e) {
+            Logger.debug(e, "Failed to hash server JAR {}.", jar.getName());
+        }
+
+        return false;
+    }
+
+    /**
+     * Save this manifest for the given server JAR in its
+     * current state after it has been checked or injected.
+     *
+     * @param jar The server JAR.
+     */
+    void save(File jar) {
+
+        try {
+            this.save(jar, hash(jar));
+        } catch (IOException e) {
+            Logger.debug(e, "Failed to hash server JAR {}.", jar.getName());
+        }
+    }
+
+    private void save(File jar, String hash) {
+
+        Properties properties = new Properties();
+        properties.putAll(this.expected);
+        properties.setProperty(SIZE, String.valueOf(jar.length()));
+        properties.setProperty(MODIFIED, String.valueOf(jar.lastModified()));
+        properties.setProperty(HASH, hash);
+        try (OutputStream output = new FileOutputStream(this.file)) {
+            properties.store(output, "NMSUtils injections into " + jar.getName() + " (do not edit)");
+        } catch (IOException e) {
+            Logger.warn(e, "Failed to save injection manifest {}.", this.file.getName());
+        }
+    }
+
+    private static String describe(Injector injector) {
+
+        if (injector instanceof CompositeInjector) {
+
+            StringJoiner joiner = new StringJoiner(";");
+            for (Injector child : ((CompositeInjector) injector).getInjectors()) {
+                joiner.add(describe(child));
+            }
+
+            return joiner.toString();
+        }
+
+        String description = injector.getClass().getName() + '@' + hashClass(injector.getClass());
+        if (injector instanceof MixinInjector) {
+            Class<?> mixin = ((MixinInjector) injector).getMixin();
+            description += ';' + mixin.getName() + '@' + hashClass(mixin);
+        }
+
+        return description;
+    }
+
+    private static String hashClass(Class<?> clazz) {
+
+        String name = Type.getInternalName(clazz) + ".class";
+        try (InputStream input = clazz.getClassLoader().getResourceAsStream(name)) {
+            return input != null ? hash(input) : "";
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static String hash(File file) throws IOException {
+
+        try (InputStream input = new FileInputStream(file)) {
+            return hash(input);
+        }
+    }
+
+    private static String hash(InputStream input) throws IOException {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Required on every JVM
+        }
+
+        byte[] buffer = new byte[65536];
+        int bytesRead;
+        while ((bytesRead = input.read(buffer)) != -1) {
+            digest.update(buffer, 0, bytesRead);
+        }
+
+        StringBuilder sb = new StringBuilder(40);
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.inject;
+
+import com.andavin.util.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A build step that writes the bytes of the classes written by
+ * {@link ByteClassInjector}s into the output directory of a version
+ * module so that they are packaged as resources and do not need to
+ * be written when the server starts.
+ * <pre>
+ *     InjectionPrecompiler &lt;output directory&gt; &lt;injector class&gt;...
+ * </pre>
+ * The version is taken from the package of each injector and a
+ * stub {@link OfflineServer server} is installed for it since the
+ * names of the classes depend on the version. This only runs during
+ * the build and is never called by the plugin.
+ *
+ * @since July 31, 2019
+ * @author Andavin
+ */
+public final class InjectionPrecompiler {
+
+    private static final Pattern VERSION = Pattern.compile("com\\.andavin\\.(v\\d+_\\d+_R\\d+)\\..+");
+
+    private InjectionPrecompiler() {
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: " + InjectionPrecompiler.class.getName() +
+                    " <output directory> <injector class>...");
+        }
+
+        Path output = new File(args[0]).toPath();
+        ClassLoader loader = InjectionPrecompiler.class.getClassLoader();
+        for (int i = 1; i < args.length; i++) {
+
+            Matcher matcher = VERSION.matcher(args[i]);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException(args[i] + " is not within a version package");
+            }
+
+            if (i == 1) { // All injectors of a module are of the same version
+                OfflineServer.install(loader, matcher.group(1), "InjectionPrecompiler");
+            }
+
+            Constructor<?> constructor = Class.forName(args[i], true, loader).getDeclaredConstructor();
+            constructor.setAccessible(true);
+            write(output, (ByteClassInjector) constructor.newInstance());
+        }
+    }
+
+    private static void write(Path output, ByteClassInjector injector) throws IOException {
+
+        Path file = output.resolve(ByteClassInjector.RESOURCE_PREFIX + injector.getInternalName() + ".class");
+        Files.createDirectories(file.getParent());
+        Files.write(file, injector.dump());
+        Logger.info("Precompiled {} version {}.", injector.getInternalName(), injector.getVersion());
+    }
+}
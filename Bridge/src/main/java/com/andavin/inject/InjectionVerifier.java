@@ -0,0 +1,238 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.inject;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.CheckClassAdapter;
+import org.objectweb.asm.util.Textifier;
+import org.objectweb.asm.util.TraceMethodVisitor;
+
+import java.io.*;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Verifies everything that would be injected into a server JAR
+ * without writing anything.
+ * <p>
+ * Every class that an {@link Injector} alters is transformed in
+ * memory, the members that were added, changed or removed are reported
+ * and the result is checked with {@link CheckClassAdapter} which runs
+ * the bytecode analyzer over every method against the given class path.
+ * The injected and byte classes are checked the same way.
+ *
+ * @since July 29, 2019
+ * @author Andavin
+ */
+final class InjectionVerifier {
+
+    private final ClassLoader loader;
+    private final PrintWriter out;
+    private final boolean verbose;
+    private int checked, failed;
+
+    /**
+     * Create a new verifier.
+     *
+     * @param loader The class loader to load the server classes
+     *               from when analyzing the bytecode.
+     * @param out The writer to write the report to.
+     * @param verbose If the full instructions of each changed
+     *                method should be written as well.
+     */
+    InjectionVerifier(ClassLoader loader, PrintWriter out, boolean verbose) {
+        this.loader = loader;
+        this.out = out;
+        this.verbose = verbose;
+    }
+
+    /**
+     * Verify all of the given injections into the given server JAR.
+     *
+     * @param jar The server JAR to verify against.
+     * @param injectors The injectors by the name of the entry of
+     *                  the class that they inject into.
+     * @param classes The classes that are injected.
+     * @param byteClasses The byte classes that are injected.
+     * @return If every class passed verification.
+     * @throws IOException If the server JAR could not be read.
+     */
+    boolean verify(JarFile jar, Map<String, Injector> injectors, Set<Class<?>> classes,
+                   List<ByteClassInjector> byteClasses) throws IOException {
+
+        for (Entry<String, Injector> entry : injectors.entrySet()) {
+
+            String name = entry.getKey();
+            JarEntry jarEntry = jar.getJarEntry(name);
+            if (jarEntry == null) {
+                this.fail(name, "Class not found in " + jar.getName());
+                continue;
+            }
+
+            byte[] original = MinecraftInjector.read(jar, jarEntry);
+            byte[] transformed;
+            try {
+                transformed = MinecraftInjector.tryTransform(new ClassReader(original), entry.getValue());
+            } catch (Exception e) {
+                StringWriter trace = new StringWriter();
+                e.printStackTrace(new PrintWriter(trace));
+                this.fail(name, "Injector " + entry.getValue().getClass().getName() + " threw " + trace);
+                continue;
+            }
+
+            if (transformed == null) {
+                this.out.println("UNCHANGED " + name + " (already injected)");
+                continue;
+            }
+
+            this.diff(original, transformed);
+            this.check(name, transformed);
+        }
+
+        for (Class<?> clazz : classes) {
+            this.checkClass(clazz);
+        }
+
+        for (ByteClassInjector injector : byteClasses) {
+            this.check(injector.getInternalName() + ".class", injector.getBytes());
+        }
+
+        this.out.println("Verified " + this.checked + " classes: " + this.failed + " failed.");
+        this.out.flush();
+        return this.failed == 0;
+    }
+
+    private void checkClass(Class<?> clazz) throws IOException {
+
+        String name = Type.getInternalName(clazz) + ".class";
+        try (InputStream input = clazz.getClassLoader().getResourceAsStream(name)) {
+
+            if (input == null) {
+                this.fail(name, "Class file not found");
+                return;
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) != -1) {
+                output.write(buffer, 0, bytesRead);
+            }
+
+            this.check(name, output.toByteArray());
+        }
+
+        for (Class<?> nested : clazz.getDeclaredClasses()) {
+            this.checkClass(nested);
+        }
+    }
+
+    private void check(String name, byte[] bytes) {
+
+        StringWriter errors = new StringWriter();
+        try {
+            CheckClassAdapter.verify(new ClassReader(bytes), this.loader, false, new PrintWriter(errors));
+        } catch (RuntimeException | LinkageError e) {
+            errors.write(e.toString());
+        }
+
+        if (errors.getBuffer().length() == 0) {
+            this.checked++;
+            this.out.println("OK " + name);
+        } else {
+            this.fail(name, errors.toString());
+        }
+    }
+
+    private void fail(String name, String message) {
+
+        this.checked++;
+        this.failed++;
+        this.out.println("FAILED " + name);
+        for (String line : message.split("\n")) {
+            this.out.println("    " + line);
+        }
+    }
+
+    private void diff(byte[] original, byte[] transformed) {
+
+        Map<String, String> before = members(original), after = members(transformed);
+        for (Entry<String, String> entry : after.entrySet()) {
+
+            String previous = before.get(entry.getKey());
+            if (previous == null) {
+                this.out.println("  + " + entry.getKey());
+                this.print("+", entry.getValue());
+            } else if (!previous.equals(entry.getValue())) {
+                this.out.println("  ~ " + entry.getKey());
+                this.print("-", previous);
+                this.print("+", entry.getValue());
+            }
+        }
+
+        for (String member : before.keySet()) {
+
+            if (!after.containsKey(member)) {
+                this.out.println("  - " + member);
+            }
+        }
+    }
+
+    private void print(String prefix, String instructions) {
+
+        if (this.verbose) {
+
+            for (String line : instructions.split("\n")) {
+                this.out.println("      " + prefix + line);
+            }
+        }
+    }
+
+    private static Map<String, String> members(byte[] bytes) {
+
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+        Map<String, String> members = new LinkedHashMap<>();
+        for (FieldNode field : node.fields) {
+            members.put(field.name + ' ' + field.desc, field.access + " " + field.value);
+        }
+
+        for (MethodNode method : node.methods) {
+            Textifier textifier = new Textifier();
+            method.accept(new TraceMethodVisitor(textifier));
+            StringWriter writer = new StringWriter();
+            textifier.print(new PrintWriter(writer));
+            members.put(method.name + method.desc, writer.toString());
+        }
+
+        return members;
+    }
+}
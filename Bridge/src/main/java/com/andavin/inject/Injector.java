@@ -66,4 +66,19 @@ public interface Injector extends Versioned, Opcodes {
      *         be written with a {@link ClassWriter}.
      */
     boolean inject(ClassNode node);
+
+    /**
+     * Tell if this injector can be applied to its class after the
+     * class has already been loaded when injecting at runtime.
+     * <p>
+     * Retransforming a loaded class can only alter the bodies of its
+     * methods and the static initializer will not run again. Injectors
+     * that rely on anything else should return {@code false} so that
+     * the server JAR is rewritten instead.
+     *
+     * @return If the class can be retransformed by this injector.
+     */
+    default boolean canRetransform() {
+        return true;
+    }
 }
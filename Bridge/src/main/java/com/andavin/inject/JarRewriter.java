@@ -0,0 +1,368 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.inject;
+
+import com.andavin.util.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.zip.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Rewrites a JAR in a single pass without decompressing it.
+ * <p>
+ * Every entry that is kept is copied directly from the original
+ * JAR including its local header and its already compressed data,
+ * so only the central directory needs to be rebuilt with the new
+ * offsets. Only the entries that are added need to be compressed and
+ * that can be done ahead of time via {@link #compress(String, byte[])}.
+ * <p>
+ * ZIP64 archives and archives with data prefixed to them can not be
+ * copied this way and are instead rewritten with a {@link ZipOutputStream}.
+ *
+ * @since July 26, 2019
+ * @author Andavin
+ */
+final class JarRewriter {
+
+    private static final int LOCAL_HEADER = 0x04034B50, CENTRAL_HEADER = 0x02014B50,
+            END_HEADER = 0x06054B50, ZIP64_LOCATOR = 0x07064B50;
+    private static final int LOCAL_SIZE = 30, CENTRAL_SIZE = 46, END_SIZE = 22;
+    private static final int VERSION = 20, UTF8_FLAG = 0x800;
+    private static final long MAX_VALUE = 0xFFFFFFFFL;
+
+    private JarRewriter() {
+    }
+
+    /**
+     * Compress the given data into a new entry that
+     * can be added to a JAR when it is rewritten.
+     *
+     * @param name The name of the entry.
+     * @param data The uncompressed data of the entry.
+     * @return The compressed entry.
+     */
+    static CompressedEntry compress(String name, byte[] data) {
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 64);
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+
+            return new CompressedEntry(name, data, output.toByteArray(), crc.getValue());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Rewrite the source JAR to the target file keeping only
+     * the entries that match the given predicate and adding
+     * the given entries to the end.
+     * <p>
+     * If an entry in the source JAR has the same name as one of
+     * the added entries, then it is always replaced.
+     *
+     * @param source The JAR to rewrite.
+     * @param target The file to write the new JAR to.
+     * @param keep The predicate to test the name of each entry
+     *             with to tell if it should be kept.
+     * @param additions The entries to add to the new JAR.
+     * @throws IOException If something goes wrong reading or writing.
+     */
+    static void rewrite(Path source, Path target, Predicate<String> keep,
+                        Collection<CompressedEntry> additions) throws IOException {
+
+        Set<String> added = new HashSet<>((int) (additions.size() / 0.75) + 1);
+        for (CompressedEntry entry : additions) {
+            added.add(entry.name);
+        }
+
+        Predicate<String> filter = name -> !added.contains(name) && keep.test(name);
+        try (FileChannel in = FileChannel.open(source, READ)) {
+
+            List<Record> records;
+            try {
+                records = readCentralDirectory(in);
+                records.removeIf(record -> !filter.test(record.name));
+                if (records.size() + additions.size() > 0xFFFF) {
+                    throw new ZipException("too many entries");
+                }
+            } catch (ZipException e) {
+                Logger.debug("Could not copy {} directly ({}). Recompressing instead.", source, e.getMessage());
+                recompress(source, target, filter, additions);
+                return;
+            }
+
+            try (FileChannel out = FileChannel.open(target, WRITE, CREATE, TRUNCATE_EXISTING)) {
+
+                ByteArrayOutputStream central = new ByteArrayOutputStream(records.size() * 96);
+                for (Record record : records) {
+
+                    int offset = checkOffset(out.position());
+                    transfer(in, record.offset, record.end - record.offset, out);
+                    ByteBuffer.wrap(record.central).order(ByteOrder.LITTLE_ENDIAN).putInt(42, offset);
+                    central.write(record.central);
+                }
+
+                int time = dosTime(LocalDateTime.now());
+                for (CompressedEntry entry : additions) {
+
+                    int offset = checkOffset(out.position());
+                    byte[] name = entry.name.getBytes(UTF_8);
+                    ByteBuffer header = ByteBuffer.allocate(LOCAL_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+                    header.putInt(LOCAL_HEADER).putShort((short) VERSION).putShort((short) UTF8_FLAG)
+                            .putShort((short) ZipEntry.DEFLATED).putInt(time).putInt((int) entry.crc)
+                            .putInt(entry.compressed.length).putInt(entry.data.length)
+                            .putShort((short) name.length).putShort((short) 0).put(name);
+                    header.flip();
+                    write(out, header);
+                    write(out, ByteBuffer.wrap(entry.compressed));
+
+                    header = ByteBuffer.allocate(CENTRAL_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+                    header.putInt(CENTRAL_HEADER).putShort((short) VERSION).putShort((short) VERSION)
+                            .putShort((short) UTF8_FLAG).putShort((short) ZipEntry.DEFLATED).putInt(time)
+                            .putInt((int) entry.crc).putInt(entry.compressed.length).putInt(entry.data.length)
+                            .putShort((short) name.length).putShort((short) 0).putShort((short) 0)
+                            .putShort((short) 0).putShort((short) 0).putInt(0).putInt(offset).put(name);
+                    central.write(header.array());
+                }
+
+                int centralOffset = checkOffset(out.position());
+                write(out, ByteBuffer.wrap(central.toByteArray()));
+
+                int count = records.size() + additions.size();
+                ByteBuffer end = ByteBuffer.allocate(END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                end.putInt(END_HEADER).putShort((short) 0).putShort((short) 0).putShort((short) count)
+                        .putShort((short) count).putInt(central.size()).putInt(centralOffset).putShort((short) 0);
+                end.flip();
+                write(out, end);
+            }
+        }
+    }
+
+    private static List<Record> readCentralDirectory(FileChannel in) throws IOException {
+
+        long size = in.size();
+        int tail = (int) Math.min(size, END_SIZE + 0xFFFF);
+        ByteBuffer buf = read(in, size - tail, tail);
+        int end = -1;
+        for (int i = tail - END_SIZE; i >= 0; i--) {
+
+            // The comment must extend exactly to the end of the file
+            if (buf.getInt(i) == END_HEADER && i + END_SIZE + (buf.getShort(i + 20) & 0xFFFF) == tail) {
+                end = i;
+                break;
+            }
+        }
+
+        if (end == -1) {
+            throw new ZipException("end of central directory not found");
+        }
+
+        int count = buf.getShort(end + 10) & 0xFFFF;
+        long centralSize = buf.getInt(end + 12) & MAX_VALUE, centralOffset = buf.getInt(end + 16) & MAX_VALUE;
+        if (end >= 20 && buf.getInt(end - 20) == ZIP64_LOCATOR || count == 0xFFFF ||
+                centralSize == MAX_VALUE || centralOffset == MAX_VALUE) {
+            throw new ZipException("ZIP64 archive");
+        }
+
+        if (centralOffset + centralSize != size - tail + end) {
+            throw new ZipException("data prefixed to archive");
+        }
+
+        ByteBuffer central = read(in, centralOffset, (int) centralSize);
+        List<Record> records = new ArrayList<>(count);
+        for (int index = 0; index < centralSize; ) {
+
+            if (central.getInt(index) != CENTRAL_HEADER) {
+                throw new ZipException("invalid central directory header");
+            }
+
+            int nameLength = central.getShort(index + 28) & 0xFFFF;
+            long offset = central.getInt(index + 42) & MAX_VALUE;
+            if (offset == MAX_VALUE || (central.getInt(index + 20) & MAX_VALUE) == MAX_VALUE) {
+                throw new ZipException("ZIP64 entry");
+            }
+
+            byte[] header = new byte[CENTRAL_SIZE + nameLength + (central.getShort(index + 30) & 0xFFFF) +
+                                     (central.getShort(index + 32) & 0xFFFF)];
+            central.position(index);
+            central.get(header);
+            records.add(new Record(new String(header, CENTRAL_SIZE, nameLength, UTF_8), header, offset));
+            index += header.length;
+        }
+
+        if (records.size() != count) {
+            throw new ZipException("entry count mismatch");
+        }
+
+        // Each entry (including any data descriptor) ends where the next one starts
+        List<Record> sorted = new ArrayList<>(records);
+        sorted.sort(Comparator.comparingLong(record -> record.offset));
+        for (int i = 0; i < sorted.size(); i++) {
+            sorted.get(i).end = i + 1 < sorted.size() ? sorted.get(i + 1).offset : centralOffset;
+        }
+
+        return records;
+    }
+
+    private static void recompress(Path source, Path target, Predicate<String> keep,
+                                   Collection<CompressedEntry> additions) throws IOException {
+
+        try (ZipFile zip = new ZipFile(source.toFile());
+             ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(target)))) {
+
+            byte[] buffer = new byte[8192];
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+
+                ZipEntry entry = entries.nextElement();
+                if (!keep.test(entry.getName())) {
+                    continue;
+                }
+
+                output.putNextEntry(new ZipEntry(entry.getName()));
+                try (InputStream input = zip.getInputStream(entry)) {
+
+                    int read;
+                    while ((read = input.read(buffer)) != -1) {
+                        output.write(buffer, 0, read);
+                    }
+                }
+
+                output.closeEntry();
+            }
+
+            for (CompressedEntry entry : additions) {
+                output.putNextEntry(new ZipEntry(entry.name));
+                output.write(entry.data);
+                output.closeEntry();
+            }
+        }
+    }
+
+    private static ByteBuffer read(FileChannel in, long position, int length) throws IOException {
+
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+
+            if (in.read(buf, position + buf.position()) == -1) {
+                throw new EOFException();
+            }
+        }
+
+        buf.flip();
+        return buf;
+    }
+
+    private static void write(FileChannel out, ByteBuffer buf) throws IOException {
+
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+
+        while (count > 0) {
+
+            long transferred = in.transferTo(position, count, out);
+            if (transferred <= 0) {
+                throw new EOFException();
+            }
+
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    private static int checkOffset(long offset) throws ZipException {
+
+        if (offset >= MAX_VALUE) {
+            throw new ZipException("JAR exceeds 4GB");
+        }
+
+        return (int) offset;
+    }
+
+    private static int dosTime(LocalDateTime time) {
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16 |
+               time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    /**
+     * An entry that has been {@link #compress(String, byte[]) compressed}
+     * and is ready to be added to a JAR.
+     */
+    static final class CompressedEntry {
+
+        private final String name;
+        private final byte[] data, compressed;
+        private final long crc;
+
+        private CompressedEntry(String name, byte[] data, byte[] compressed, long crc) {
+            this.name = name;
+            this.data = data;
+            this.compressed = compressed;
+            this.crc = crc;
+        }
+    }
+
+    /**
+     * An entry in the central directory of the source JAR.
+     */
+    private static final class Record {
+
+        private final String name;
+        private final byte[] central;
+        private final long offset;
+        private long end;
+
+        Record(String name, byte[] central, long offset) {
+            this.name = name;
+            this.central = central;
+            this.offset = offset;
+        }
+    }
+}
@@ -24,6 +24,8 @@
 
 package com.andavin.inject;
 
+import com.andavin.inject.JarRewriter.CompressedEntry;
+import com.andavin.inject.mixin.MixinInjector;
 import com.andavin.util.Logger;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
@@ -34,6 +36,7 @@ import org.objectweb.asm.tree.AnnotationNode;
 import org.objectweb.asm.tree.ClassNode;
 
 import java.io.*;
+import java.lang.instrument.Instrumentation;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
@@ -41,9 +44,12 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
 
 /**
  * @since December 25, 2018
@@ -56,23 +62,34 @@ public final class MinecraftInjector {
     private static final Map<Class<?>, Plugin> INJECTION_CLASSES = new LinkedHashMap<>();
     private static final List<ByteClassInjector> BYTE_INJECTION_CLASSES = new ArrayList<>();
 
-    private static final String INJECTOR_VERSION_DESC, INJECTOR_VERSION_CLASS;
-
-    static {
-        String internalName = Type.getInternalName(InjectorVersion.class);
-        INJECTOR_VERSION_DESC = 'L' + internalName + ';';
-        INJECTOR_VERSION_CLASS = internalName + ".class";
-    }
+    // Not taken from the class itself so that it is not loaded before the agent is attached
+    private static final String INJECTOR_VERSION_DESC = "Lcom/andavin/inject/InjectorVersion;";
+    private static final String INJECTOR_VERSION_CLASS = "com/andavin/inject/InjectorVersion.class";
+    private static final String AGENT_PROPERTY = "nmsutils.agent";
+    private static Instrumentation instrumentation;
 
     /**
      * Register an {@link Injector} to inject into a Bukkit or
-     * Minecraft class.
+     * Minecraft class. If there is already an injector for the
+     * class, then both will be applied in the order they were
+     * registered.
      *
      * @param classToAlter The class to inject and alter.
      * @param injector The injector to do the alterations.
      */
     public static void register(Class<?> classToAlter, Injector injector) {
-        INJECTORS.put(Type.getInternalName(classToAlter) + ".class", injector);
+        INJECTORS.merge(Type.getInternalName(classToAlter) + ".class", injector, CompositeInjector::new);
+    }
+
+    /**
+     * Register a {@link MixinInjector} to apply its
+     * {@link com.andavin.inject.mixin.Mixin} to the class
+     * that the mixin targets.
+     *
+     * @param injector The injector for the mixin.
+     */
+    public static void register(MixinInjector injector) {
+        INJECTORS.merge(injector.getTarget() + ".class", injector, CompositeInjector::new);
     }
 
     /**
@@ -122,38 +139,109 @@ public final class MinecraftInjector {
         BYTE_INJECTION_CLASSES.add(injector);
     }
 
+    /**
+     * Attach the {@link InjectionAgent} so that injections can be
+     * done at runtime rather than by rewriting the server JAR and
+     * restarting the server.
+     * <p>
+     * This defines all of the classes in the JAR of the given plugin
+     * that will be {@link #injectClass(Plugin, Class) injected} in the
+     * server class loader, so it must be called before the plugin
+     * loads any of those classes itself (i.e. first thing in
+     * {@link Plugin#onLoad()}). If this is not called or the agent
+     * could not be attached, {@link #inject()} will fall back to
+     * rewriting the server JAR.
+     * <p>
+     * Since attaching an agent to the running JVM requires
+     * {@code -Djdk.attach.allowAttachSelf=true} on Java 9 and later and
+     * loads the attach API from the JDK on Java 8, runtime injection is
+     * only used if the server is started with {@code -Dnmsutils.agent=true}
+     * or the agent was already loaded with {@code -javaagent}.
+     *
+     * @param plugin The plugin to attach the agent for.
+     * @return If the agent was attached and the classes were defined.
+     */
+    public static boolean attachAgent(Plugin plugin) {
+
+        if (!Boolean.getBoolean(AGENT_PROPERTY) && !AgentInjector.isLoaded()) {
+            return false;
+        }
+
+        Instrumentation instrumentation = AgentInjector.attach(plugin.getDataFolder());
+        if (instrumentation == null) {
+            return false;
+        }
+
+        try {
+
+            File pluginJar = new File(plugin.getClass().getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (AgentInjector.defineClasses(instrumentation, Bukkit.class.getClassLoader(), pluginJar)) {
+                MinecraftInjector.instrumentation = instrumentation;
+                return true;
+            }
+        } catch (IOException | URISyntaxException e) {
+            Logger.severe(e, "Failed to define injected classes for {}.", plugin.getName());
+        }
+
+        return false;
+    }
+
     /**
      * Inject all of the altered code and carry out those
      * alterations if needed. If this method succeeds and
      * there was code that needed to be injected, then the
      * server will immediately shutdown after this.
+     * <p>
+     * If the agent was {@link #attachAgent(Plugin) attached}, then
+     * the alterations are done at runtime instead and the server
+     * does not need to be restarted. Rewriting the server JAR is
+     * only used if that fails.
      *
      * @return If the injection alterations occurred and the
      *         server will be shutting down.
      */
     public static boolean inject() {
 
-        String pathToJar;
+        File jarFile;
         try {
-            pathToJar = Bukkit.class.getProtectionDomain().getCodeSource().getLocation().toURI().getPath();
+            jarFile = getServerJar();
         } catch (URISyntaxException e) {
             Logger.severe(e, "Could not locate server JAR. Please inform the developer.");
             return false;
         }
 
-        File jarFile = new File(pathToJar);
         String jarName = jarFile.getName();
         int jarIndex = jarName.indexOf(".jar");
         if (jarIndex == -1) {
             throw new IllegalStateException("The server jar found is not a JAR: " + jarName);
         }
 
+        long start = System.nanoTime();
+        if (instrumentation != null && AgentInjector.inject(instrumentation, Bukkit.class.getClassLoader(),
+                INJECTORS, INJECTION_CLASSES.keySet(), BYTE_INJECTION_CLASSES)) {
+            Logger.info("Injected all alterations at runtime in {}ms.",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return false;
+        }
+
+        // If nothing has changed since the last check, then there is no need to scan the JAR
+        File manifestFile = new File(jarFile.getParent(), jarName.substring(0, jarIndex) + "-injections.properties");
+        InjectionManifest manifest = new InjectionManifest(manifestFile, INJECTORS, INJECTION_CLASSES, BYTE_INJECTION_CLASSES);
+        if (manifest.matches(jarFile)) {
+            Logger.info("All injections are up to date (checked in {}ms).",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            INJECTORS.clear(); // No memory leaks
+            return false;
+        }
+
+        long phase = logPhase("manifest check", start);
         try (JarFile jar = new JarFile(jarFile)) {
 
+            // Only the classes that have an injector need to be read, so
+            // start transforming each one as soon as it is found
             boolean annotation = false;
             Enumeration<JarEntry> entries = jar.entries();
-            List<JarEntry> unchanged = new ArrayList<>(jar.size());
-            Map<String, ClassWriter> changed = new HashMap<>((int) (INJECTORS.size() / 0.75));
+            Map<String, ForkJoinTask<byte[]>> transforms = new HashMap<>((int) (INJECTORS.size() / 0.75));
             while (entries.hasMoreElements()) {
 
                 JarEntry entry = entries.nextElement();
@@ -164,27 +252,28 @@ public final class MinecraftInjector {
 
                         Injector injector = INJECTORS.get(name);
                         if (injector != null) {
-
-                            Object writer = inject(jar, entry, injector);
-                            if (writer instanceof ClassWriter) {
-                                Logger.debug("Class {} has been found and altered successfully.", name);
-                                changed.put(entry.getName(), (ClassWriter) writer);
-                            } else {
-                                unchanged.add(entry);
-                            }
-
-                            continue;
+                            transforms.put(name, ForkJoinPool.commonPool().submit(() -> inject(jar, entry, injector)));
                         }
                     } else if (!annotation && name.equals(INJECTOR_VERSION_CLASS)) {
                         annotation = true;
                     }
                 }
+            }
 
-                unchanged.add(entry);
+            Map<String, byte[]> changed = new HashMap<>((int) (transforms.size() / 0.75));
+            for (Entry<String, ForkJoinTask<byte[]>> entry : transforms.entrySet()) {
+
+                byte[] bytes = entry.getValue().join();
+                if (bytes != null) {
+                    Logger.debug("Class {} has been found and altered successfully.", entry.getKey());
+                    changed.put(entry.getKey(), bytes);
+                }
             }
 
+            phase = logPhase("scan and transform", phase);
             if (changed.isEmpty() && INJECTION_CLASSES.isEmpty()) {
                 Logger.info("Nothing found to inject.");
+                manifest.save(jarFile);
                 INJECTORS.clear(); // No memory leaks
                 return false;
             }
@@ -192,88 +281,73 @@ public final class MinecraftInjector {
             Logger.info("Found {} classes to alter and {} new classes that need to be injected.",
                     changed.size(), INJECTION_CLASSES.size() + BYTE_INJECTION_CLASSES.size());
 
-            Path jarPath = jarFile.toPath();
-            String parent = jarFile.getParent();
-            File tempJar = new File(parent, "injection-temp.jar");
-            try (JarOutputStream output = new JarOutputStream(new FileOutputStream(tempJar))) {
-
-                if (!annotation) { // Add the annotation to the JAR
+            Map<String, byte[]> added = new LinkedHashMap<>();
+            if (!annotation) { // Add the annotation to the JAR
 
-                    try {
-
-                        String path = InjectorVersion.class.getProtectionDomain().getCodeSource().getLocation().toURI().getPath();
-                        try (JarFile annotationJar = new JarFile(new File(path))) {
+                try {
 
-                            Enumeration<JarEntry> annEntries = annotationJar.entries();
-                            while (annEntries.hasMoreElements()) {
+                    String path = InjectorVersion.class.getProtectionDomain().getCodeSource().getLocation().toURI().getPath();
+                    try (JarFile annotationJar = new JarFile(new File(path))) {
 
-                                JarEntry entry = annEntries.nextElement();
-                                if (entry.getName().equals(INJECTOR_VERSION_CLASS)) {
-                                    writeClass(annotationJar, output, entry);
-                                    break;
-                                }
-                            }
+                        JarEntry entry = annotationJar.getJarEntry(INJECTOR_VERSION_CLASS);
+                        if (entry != null) {
+                            added.put(INJECTOR_VERSION_CLASS, read(annotationJar, entry));
                         }
-
-                    } catch (URISyntaxException e) {
-                        Logger.severe(e);
                     }
+                } catch (URISyntaxException e) {
+                    Logger.severe(e);
                 }
+            }
 
-                // If there are classes that need injected, then attempt to write them.
-                boolean classesUnwritten = !INJECTION_CLASSES.isEmpty() && writeClasses(output);
-                if (classesUnwritten && changed.isEmpty()) {
-                    // If they do not need to be written and there are no other changes
-                    // then cleanup the file and return that there were no changes
-                    Logger.info("No new class versions were available. Nothing to inject.");
-                    tempJar.delete();
-                    return false;
-                }
-
-                String backupName = jarName.substring(0, jarIndex) + "-backup.jar";
-                File backup = new File(parent, backupName);
-                if (!backup.exists()) {
-                    Logger.info("Making a backup of the current server JAR as {}.", backupName);
-                    Logger.info("Restore to the backup at any time if there are issues.");
-                    Files.copy(jarPath, backup.toPath());
-                }
-
-                Logger.info("Injecting all alterations into a temporary JAR...");
-                for (JarEntry entry : unchanged) {
-
-                    String name = entry.getName();
-                    int classIndex = name.indexOf(".class");
-                    if (classIndex != -1) { // Remove the classes that need to be added
+            // If there are classes that need injected, then attempt to write them.
+            boolean classesUnwritten = !INJECTION_CLASSES.isEmpty() && writeClasses(added);
+            phase = logPhase("class version check", phase);
+            if (classesUnwritten && changed.isEmpty()) {
+                // If they do not need to be written and there are no other changes
+                // then return that there were no changes
+                Logger.info("No new class versions were available. Nothing to inject.");
+                manifest.save(jarFile);
+                return false;
+            }
 
-                        String className = name.substring(0, classIndex);
-                        if (EXCLUDED.contains(className)) {
-                            Logger.debug("Removing old version of class {}.", name);
-                            continue;
-                        }
+            Path jarPath = jarFile.toPath();
+            String parent = jarFile.getParent();
+            String backupName = jarName.substring(0, jarIndex) + "-backup.jar";
+            File backup = new File(parent, backupName);
+            if (!backup.exists()) {
+                Logger.info("Making a backup of the current server JAR as {}.", backupName);
+                Logger.info("Restore to the backup at any time if there are issues.");
+                Files.copy(jarPath, backup.toPath());
+                phase = logPhase("backup", phase);
+            }
 
-                        int subIndex = name.lastIndexOf('$');
-                        if (subIndex != -1 && EXCLUDED.contains(name.substring(0, subIndex))) {
-                            Logger.debug("Removing old version of class {}.", name);
-                            continue;
-                        }
-                    }
+            Logger.info("Injecting all alterations into a temporary JAR...");
+            added.putAll(changed);
+            List<CompressedEntry> compressed = added.entrySet().parallelStream()
+                    .map(entry -> JarRewriter.compress(entry.getKey(), entry.getValue()))
+                    .collect(Collectors.toList());
+            phase = logPhase("compression", phase);
 
-                    writeClass(jar, output, entry);
-                }
+            // Every other entry is copied as is without being decompressed
+            Path tempJar = new File(parent, "injection-temp.jar").toPath();
+            JarRewriter.rewrite(jarPath, tempJar, name -> !isExcluded(name), compressed);
+            phase = logPhase("write", phase);
 
-                for (Entry<String, ClassWriter> entry : changed.entrySet()) {
-                    output.putNextEntry(new JarEntry(entry.getKey()));
-                    output.write(entry.getValue().toByteArray());
-                    output.flush();
-                    output.closeEntry();
-                }
+            Logger.info("Replacing server JAR ({}) with the injected version.", jarName);
+            try {
+                // Moving replaces the file rather than writing over the JAR that is open
+                Files.move(tempJar, jarPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Logger.debug("Could not move the temporary JAR ({}). Copying instead.", e.getMessage());
+                Files.copy(tempJar, jarPath, StandardCopyOption.REPLACE_EXISTING);
+                Files.delete(tempJar);
             }
 
-            Logger.info("Replacing server JAR ({}) with the injected version.", jarName);
-            Files.copy(tempJar.toPath(), jarPath, StandardCopyOption.REPLACE_EXISTING);
-            Logger.info("Deleting temporary injected JAR.");
-            tempJar.delete();
-            Logger.info("Injection completed successfully. Please restart the server.");
+            logPhase("replace", phase);
+            manifest.save(jarFile);
+
+            Logger.info("Injection completed successfully in {}ms. Please restart the server.",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
             Bukkit.shutdown();
 
         } catch (IOException e) {
@@ -283,24 +357,178 @@ public final class MinecraftInjector {
         return true;
     }
 
-    private static Object inject(JarFile jar, JarEntry entry, Injector injector) {
+    /**
+     * Verify all of the registered injections against the server
+     * JAR without altering it or anything else (i.e. a dry run) and
+     * log the report.
+     *
+     * @param verbose If the full instructions of each method that
+     *                would be changed should be logged as well.
+     * @return If every class passed verification.
+     * @see #verify(File, ClassLoader, PrintWriter, boolean)
+     */
+    public static boolean verify(boolean verbose) {
+
+        StringWriter report = new StringWriter();
+        boolean passed;
+        try {
+            passed = verify(getServerJar(), Bukkit.class.getClassLoader(), new PrintWriter(report), verbose);
+        } catch (IOException | URISyntaxException e) {
+            Logger.severe(e, "Failed to verify injections.");
+            return false;
+        }
+
+        for (String line : report.toString().split("\n")) {
+            Logger.info(line);
+        }
+
+        return passed;
+    }
+
+    /**
+     * Verify all of the registered injections against the given
+     * server JAR without altering it (i.e. a dry run).
+     * <p>
+     * Every class that would be altered is transformed in memory and
+     * the methods and fields that would be added, changed or removed
+     * are reported. Each altered class along with every class that
+     * would be injected is then checked with ASM's {@code CheckClassAdapter},
+     * which analyzes the bytecode of every method, so that any problem
+     * is found now rather than when the server fails to start.
+     *
+     * @param serverJar The server JAR to verify against.
+     * @param loader The class loader to load server classes from
+     *               while analyzing the bytecode.
+     * @param out The writer to write the report to.
+     * @param verbose If the full instructions of each method that
+     *                would be changed should be reported as well.
+     * @return If every class passed verification.
+     * @throws IOException If the server JAR could not be read.
+     */
+    public static boolean verify(File serverJar, ClassLoader loader, PrintWriter out, boolean verbose) throws IOException {
+
+        try (JarFile jar = new JarFile(serverJar)) {
+            return new InjectionVerifier(loader, out, verbose).verify(jar, INJECTORS,
+                    INJECTION_CLASSES.keySet(), BYTE_INJECTION_CLASSES);
+        }
+    }
+
+    private static File getServerJar() throws URISyntaxException {
+        return new File(Bukkit.class.getProtectionDomain().getCodeSource().getLocation().toURI().getPath());
+    }
+
+    private static long logPhase(String phase, long start) {
+        long now = System.nanoTime();
+        Logger.info("Injection {} took {}ms.", phase, TimeUnit.NANOSECONDS.toMillis(now - start));
+        return now;
+    }
+
+    private static byte[] inject(JarFile jar, JarEntry entry, Injector injector) {
 
         try (InputStream stream = jar.getInputStream(entry)) {
+            return transform(new ClassReader(stream), injector);
+        } catch (IOException e) {
+            Logger.severe(e, "Exception thrown during injection for injector {}", injector.getClass().getName());
+            return null; // No change
+        }
+    }
 
-            ClassReader reader = new ClassReader(stream);
-            ClassNode node = new ClassNode();
-            reader.accept(node, ClassReader.SKIP_FRAMES);
-            if (injector.inject(node)) {
-                ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_FRAMES);
-                node.accept(writer);
-                return writer;
-            }
+    /**
+     * Apply the given {@link Injector} to the class that is
+     * read by the given {@link ClassReader}.
+     *
+     * @param reader The reader of the class to alter.
+     * @param injector The injector to apply to the class.
+     * @return The bytes of the altered class or {@code null}
+     *         if the class did not need to be altered.
+     */
+    static byte[] transform(ClassReader reader, Injector injector) {
 
-            return entry;
+        try {
+            return tryTransform(reader, injector);
         } catch (Exception e) {
             Logger.severe(e, "Exception thrown during injection for injector {}", injector.getClass().getName());
-            return entry; // No change
+            return null; // No change
+        }
+    }
+
+    /**
+     * Apply the given {@link Injector} to the class that is
+     * read by the given {@link ClassReader} without handling
+     * any exception that is thrown by the injector.
+     *
+     * @param reader The reader of the class to alter.
+     * @param injector The injector to apply to the class.
+     * @return The bytes of the altered class or {@code null}
+     *         if the class did not need to be altered.
+     * @throws Exception If the injector failed to alter the class.
+     */
+    static byte[] tryTransform(ClassReader reader, Injector injector) throws Exception {
+
+        ClassNode node = new ClassNode();
+        reader.accept(node, ClassReader.SKIP_FRAMES);
+        if (injector.inject(node)) {
+            ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_FRAMES);
+            node.accept(writer);
+            return writer.toByteArray();
+        }
+
+        return null;
+    }
+
+    /**
+     * Read the value of the {@link InjectorVersion} annotation
+     * of the class that is described by the given bytes.
+     *
+     * @param bytes The bytes of the class.
+     * @return The version of the class or {@code null} if
+     *         the class is not annotated.
+     */
+    static String readVersion(byte[] bytes) {
+
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+        if (node.visibleAnnotations != null) {
+
+            for (AnnotationNode annotationNode : node.visibleAnnotations) {
+
+                // Get the version annotation from the class
+                if (annotationNode.desc.equals(INJECTOR_VERSION_DESC)) {
+                    List<Object> values = annotationNode.values;
+                    return values != null && values.size() >= 2 ? String.valueOf(values.get(1)) : null;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Tell if the entry with the given name is an old version of
+     * a class that is being replaced and should be removed.
+     *
+     * @param name The name of the entry.
+     * @return If the entry should not be written to the new JAR.
+     */
+    private static boolean isExcluded(String name) {
+
+        int classIndex = name.indexOf(".class");
+        if (classIndex != -1) { // Remove the classes that need to be added
+
+            String className = name.substring(0, classIndex);
+            if (EXCLUDED.contains(className)) {
+                Logger.debug("Removing old version of class {}.", name);
+                return true;
+            }
+
+            int subIndex = name.lastIndexOf('$');
+            if (subIndex != -1 && EXCLUDED.contains(name.substring(0, subIndex))) {
+                Logger.debug("Removing old version of class {}.", name);
+                return true;
+            }
         }
+
+        return false;
     }
 
     /**
@@ -313,128 +541,89 @@ public final class MinecraftInjector {
      * version is changed and otherwise will leave it up to the
      * unchanged class writer to transfer the old class.
      *
-     * @param output The {@link JarOutputStream} to write the classes to.
+     * @param output The map to put the name and bytes of each class to write into.
      * @return True if there were no classes that needed to be written at this time.
      * @throws IOException If anything goes wrong while writing to the JAR.
      */
-    private static boolean writeClasses(JarOutputStream output) throws IOException {
+    private static boolean writeClasses(Map<String, byte[]> output) throws IOException {
 
-        JarFile jar = null;
-        URL location = null; // The current location for each class
-        Plugin plugin = null;
         boolean unchanged = true; // Default to no changes
-        nextInjectionEntry:
-        for (Entry<Class<?>, Plugin> classEntry : INJECTION_CLASSES.entrySet()) {
-
-            Class<?> clazz = classEntry.getKey();
-            // Get the current version in the Minecraft JAR
-            String version = clazz.getDeclaredAnnotation(InjectorVersion.class).value();
-            if (jar == null || classEntry.getValue() != plugin) {
+        Map<Plugin, List<Class<?>>> byPlugin = new LinkedHashMap<>();
+        INJECTION_CLASSES.forEach((clazz, plugin) -> byPlugin.computeIfAbsent(plugin, p -> new ArrayList<>()).add(clazz));
+        for (Entry<Plugin, List<Class<?>>> pluginEntry : byPlugin.entrySet()) {
 
-                plugin = classEntry.getValue();
-                location = plugin.getClass().getProtectionDomain().getCodeSource().getLocation();
-                try {
-                    jar = new JarFile(new File(location.toURI().getPath()));
-                } catch (URISyntaxException e) {
-                    Logger.severe(e);
-                    continue;
-                }
+            URL location = pluginEntry.getKey().getClass().getProtectionDomain().getCodeSource().getLocation();
+            File file;
+            try {
+                file = new File(location.toURI().getPath());
+            } catch (URISyntaxException e) {
+                Logger.severe(e);
+                continue;
             }
 
-            boolean parentWritten = false;
-            List<JarEntry> subClasses = null;
-            String internalName = Type.getInternalName(clazz);
-            String clazzName = internalName + ".class";
-            String subClassPrefix = internalName + '$';
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-
-                JarEntry entry = entries.nextElement();
-                if (entry.isDirectory()) {
-                    continue;
-                }
+            try (JarFile jar = new JarFile(file)) {
 
-                String name = entry.getName();
-                if (!name.endsWith(".class")) {
-                    continue;
+                // The nested classes of each class are not known from the class itself
+                // so find them all in a single pass over the entries of the plugin JAR
+                Map<String, List<JarEntry>> nestedClasses = new HashMap<>();
+                for (Class<?> clazz : pluginEntry.getValue()) {
+                    nestedClasses.put(Type.getInternalName(clazz), new ArrayList<>(0));
                 }
 
-                boolean subClass = name.startsWith(subClassPrefix);
-                if (subClass && !parentWritten) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
 
-                    if (subClasses == null) {
-                        subClasses = new ArrayList<>(1);
+                    JarEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (entry.isDirectory() || !name.endsWith(".class")) {
+                        continue;
                     }
 
-                    subClasses.add(entry);
-                    continue;
+                    for (int i = name.indexOf('$'); i != -1; i = name.indexOf('$', i + 1)) {
+
+                        List<JarEntry> nested = nestedClasses.get(name.substring(0, i));
+                        if (nested != null) {
+                            nested.add(entry);
+                            break;
+                        }
+                    }
                 }
 
-                if (subClass || name.equals(clazzName)) { // Write the class and all subclasses
+                for (Class<?> clazz : pluginEntry.getValue()) {
+
+                    String internalName = Type.getInternalName(clazz);
+                    String name = internalName + ".class";
+                    JarEntry entry = jar.getJarEntry(name);
+                    if (entry == null) {
+                        continue;
+                    }
 
                     // Check that they are in a different JAR (one in plugin the other in server)
                     // If they are in the same JAR (i.e. in the plugin) just write it immediately
                     // since it's not yet present in the server JAR
-                    if (subClass || clazz.getProtectionDomain().getCodeSource().getLocation() == location) {
-
-                        if (!subClass) {
-
-                            Logger.debug("Doing initial write of class {}.", name);
-                            parentWritten = true;
-                            writeClass(jar, output, entry);
-                            if (subClasses != null) {
-
-                                for (JarEntry subEntry : subClasses) { // Write all previous subclasses
-                                    writeClass(jar, output, subEntry);
-                                }
-                            }
-                        } else {
-                            writeClass(jar, output, entry);
-                        }
-
+                    byte[] bytes = read(jar, entry);
+                    if (clazz.getProtectionDomain().getCodeSource().getLocation() == location) {
+                        Logger.debug("Doing initial write of class {}.", name);
                     } else {
 
-                        try (InputStream input = jar.getInputStream(entry)) {
-
-                            ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-                            writeClass(input, byteStream); // Write the class to the byte stream
-
-                            ClassReader reader = new ClassReader(byteStream.toByteArray()); // Read the entry
-                            ClassNode node = new ClassNode();
-                            reader.accept(node, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
-                            if (node.visibleAnnotations != null) {
-
-                                for (AnnotationNode annotationNode : node.visibleAnnotations) {
-
-                                    // Get the version annotation from the class
-                                    if (annotationNode.desc.equals(INJECTOR_VERSION_DESC)) {
-
-                                        List<Object> values = annotationNode.values; // Check that the version is the same
-                                        if (values != null && values.size() >= 2 && values.get(1).equals(version)) {
-                                            continue nextInjectionEntry; // This entry doesn't need a change
-                                        }
-
-                                        Logger.info("Found newer version of class {}.", name);
-                                        break;
-                                    }
-                                }
-                            }
+                        // Get the current version in the Minecraft JAR
+                        String version = clazz.getDeclaredAnnotation(InjectorVersion.class).value();
+                        String current = readVersion(bytes);
+                        if (version.equals(current)) {
+                            continue; // This entry doesn't need a change
+                        }
 
-                            EXCLUDED.add(internalName); // Exclude so the old version will not be written
-                            parentWritten = true;
-                            // Write the entry to the new JAR to override the previous version
-                            output.putNextEntry(new JarEntry(name));
-                            output.write(byteStream.toByteArray()); // Write a new copy
-                            output.flush();
-                            output.closeEntry();
+                        if (current != null) {
+                            Logger.info("Found newer version of class {}.", name);
+                        }
 
-                            if (subClasses != null) {
+                        EXCLUDED.add(internalName); // Exclude so the old version will not be written
+                    }
 
-                                for (JarEntry subEntry : subClasses) {
-                                    writeClass(jar, output, subEntry);
-                                }
-                            }
-                        }
+                    // Write the entry to the new JAR along with all of its nested classes
+                    output.put(name, bytes);
+                    for (JarEntry nestedEntry : nestedClasses.get(internalName)) {
+                        output.put(nestedEntry.getName(), read(jar, nestedEntry));
                     }
 
                     unchanged = false;
@@ -464,33 +653,25 @@ public final class MinecraftInjector {
             // Exclude so the old version will not be written
             EXCLUDED.add(name);
             // Write the entry to the new JAR to override the previous version
-            output.putNextEntry(new JarEntry(name + ".class"));
-            output.write(injector.dump());
-            output.flush();
-            output.closeEntry();
+            output.put(name + ".class", injector.getBytes());
             unchanged = false;
         }
 
         return unchanged;
     }
 
-    private static void writeClass(JarFile jar, JarOutputStream output, JarEntry entry) throws IOException {
+    static byte[] read(JarFile jar, JarEntry entry) throws IOException {
 
         try (InputStream input = jar.getInputStream(entry)) {
-            output.putNextEntry(new JarEntry(entry.getName()));
-            writeClass(input, output);
-            output.closeEntry();
-        }
-    }
 
-    private static void writeClass(InputStream input, OutputStream output) throws IOException {
+            byte[] buffer = new byte[4096];
+            ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(32, (int) entry.getSize()));
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) != -1) {
+                output.write(buffer, 0, bytesRead);
+            }
 
-        byte[] buffer = new byte[4096];
-        int bytesRead;
-        while ((bytesRead = input.read(buffer)) != -1) {
-            output.write(buffer, 0, bytesRead);
+            return output.toByteArray();
         }
-
-        output.flush();
     }
 }
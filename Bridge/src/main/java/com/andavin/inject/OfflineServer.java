@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.inject;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.command.SimpleCommandMap;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.SimplePluginManager;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.logging.Logger;
+
+/**
+ * A stub {@link Server} that allows injections to be computed or
+ * checked without a running server (e.g. during the build or from
+ * the command line).
+ * <p>
+ * The version of the server is taken from the package of its
+ * class, so the stub implements a package-private interface
+ * that is defined in the CraftBukkit package of the version,
+ * which places the proxy class in that package as well.
+ *
+ * @since July 31, 2019
+ * @author Andavin
+ */
+public final class OfflineServer {
+
+    private OfflineServer() {
+    }
+
+    /**
+     * Create a stub {@link Server} for the given version and
+     * set it as the server for {@link Bukkit}.
+     *
+     * @param loader The class loader that the Bukkit API
+     *               and NMSUtils are loaded by.
+     * @param version The version package of the server (e.g. {@code v1_13_R2}).
+     * @param name The name of the server.
+     * @return The new server.
+     */
+    public static Server install(ClassLoader loader, String version, String name) {
+
+        String internalName = "org/bukkit/craftbukkit/" + version + "/OfflineServer";
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE, internalName,
+                null, "java/lang/Object", new String[]{ "org/bukkit/Server" });
+        writer.visitEnd();
+
+        ServerLoader serverLoader = new ServerLoader(loader, internalName, writer.toByteArray());
+        SimplePluginManager[] manager = new SimplePluginManager[1];
+        Server server = (Server) Proxy.newProxyInstance(serverLoader, new Class<?>[]{ serverLoader.serverClass },
+                handler(name, Logger.getLogger(name), manager));
+        manager[0] = new SimplePluginManager(server, new SimpleCommandMap(server));
+        Bukkit.setServer(server);
+        return server;
+    }
+
+    /**
+     * Create a stub {@link Plugin} with the given name.
+     *
+     * @param loader The class loader that the Bukkit API is loaded by.
+     * @param name The name of the plugin.
+     * @return The new plugin.
+     */
+    public static Plugin createPlugin(ClassLoader loader, String name) {
+        return (Plugin) Proxy.newProxyInstance(loader, new Class<?>[]{ Plugin.class }, handler(name, null, null));
+    }
+
+    private static InvocationHandler handler(String name, Logger logger, SimplePluginManager[] manager) {
+
+        return (proxy, method, args) -> {
+
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "offline";
+                case "getLogger":
+                    return logger;
+                case "getPluginManager":
+                    return manager != null ? manager[0] : null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return name;
+            }
+
+            Class<?> type = method.getReturnType();
+            return type.isPrimitive() && type != void.class ? Array.get(Array.newInstance(type, 1), 0) : null;
+        };
+    }
+
+    private static final class ServerLoader extends ClassLoader {
+
+        private final Class<?> serverClass;
+
+        ServerLoader(ClassLoader parent, String name, byte[] bytes) {
+
+            super(parent);
+            String className = name.replace('/', '.');
+            this.definePackage(className.substring(0, className.lastIndexOf('.')),
+                    null, null, null, null, null, null, null);
+            this.serverClass = this.defineClass(className, bytes, 0, bytes.length);
+        }
+    }
+}
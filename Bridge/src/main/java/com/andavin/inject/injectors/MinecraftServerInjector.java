@@ -24,11 +24,15 @@
 
 package com.andavin.inject.injectors;
 
-import com.andavin.inject.Injector;
+import com.andavin.inject.mixin.MixinInjector;
 
 /**
  * @since December 25, 2018
  * @author Andavin
  */
-public abstract class MinecraftServerInjector implements Injector {
+public abstract class MinecraftServerInjector extends MixinInjector {
+
+    protected MinecraftServerInjector(Class<?> mixin) {
+        super(mixin);
+    }
 }
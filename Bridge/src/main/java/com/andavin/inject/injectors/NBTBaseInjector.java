@@ -31,4 +31,9 @@ import com.andavin.inject.Injector;
  * @author Andavin
  */
 public abstract class NBTBaseInjector implements Injector {
+
+    @Override
+    public boolean canRetransform() {
+        return false; // The static initializer is altered
+    }
 }
@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.inject.mixin;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a {@link Mixin} that is called from
+ * a method in the target class at the given {@link At point}.
+ * <p>
+ * The annotated method is copied into the target class and
+ * must return {@code void}. It may either take no parameters
+ * or the same parameters as the method it is injected into.
+ * If the annotated method is not {@code static}, then it will
+ * be called on the same instance as the target method.
+ * <p>
+ * If the annotated method is {@code static} and only passes its
+ * parameters on to a {@code static} method of another class, then
+ * that method is called directly and nothing is copied.
+ *
+ * @since July 30, 2019
+ * @author Andavin
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface Inject {
+
+    /**
+     * The method to inject into. This is either just the name
+     * of the method or the name followed by its descriptor
+     * (e.g. {@code tick(Ljava/util/function/BooleanSupplier;)V})
+     * if the method is overloaded.
+     *
+     * @return The method to inject into.
+     */
+    String method();
+
+    /**
+     * The point in the method at which to call the
+     * annotated method.
+     *
+     * @return The point to inject at.
+     */
+    At at() default At.HEAD;
+
+    /**
+     * The points in a method that can be injected at.
+     */
+    enum At {
+
+        /**
+         * Before the first instruction of the method.
+         * This cannot be used for constructors.
+         */
+        HEAD,
+
+        /**
+         * Before every return instruction of the method.
+         */
+        RETURN
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.inject.mixin;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class as a mixin for the class that it targets.
+ * A mixin is a plain Java class whose methods are annotated
+ * with {@link Overwrite}, {@link Inject} or {@link Redirect}
+ * and are copied into the target class by a {@link MixinInjector}.
+ * <p>
+ * Any reference to the mixin class within its methods is
+ * replaced with a reference to the target class. Fields and
+ * methods of the target that need to be accessed should be
+ * declared in the mixin and annotated with {@link Shadow}. Other
+ * than those, a mixin may only declare constant fields.
+ * In order to use the mixin as an instance of the target class
+ * it can be cast through {@code Object} (e.g.
+ * {@code (MinecraftServer) (Object) this}).
+ *
+ * @since July 30, 2019
+ * @author Andavin
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Mixin {
+
+    /**
+     * The class that the mixin is applied to.
+     *
+     * @return The target class.
+     */
+    Class<?> value();
+
+    /**
+     * The version of the mixin. When the version is changed,
+     * then the mixin will be applied to the target again.
+     *
+     * @return The version string.
+     */
+    String version();
+}
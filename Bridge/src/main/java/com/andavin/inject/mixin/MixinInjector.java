@@ -0,0 +1,616 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.inject.mixin;
+
+import com.andavin.inject.Injector;
+import com.andavin.inject.MinecraftInjector;
+import com.andavin.util.Logger;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.MethodRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.objectweb.asm.tree.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An {@link Injector} that applies a {@link Mixin} to its target
+ * class. The mixin class is read and compiled into a set of
+ * operations a single time when this injector is created and
+ * those operations are then applied to the {@link ClassNode}
+ * of the target class every time it is injected.
+ * <p>
+ * Once a mixin has been applied the target class is marked with
+ * its version so that it is not applied again until the version
+ * is changed. Applying a mixin again is safe since every method
+ * that is copied into the target class is replaced and calls to
+ * those methods are only inserted where they are not yet present.
+ * <p>
+ * A {@code static} handler that does nothing but pass its parameters
+ * to a {@code static} method of another class (and return its result)
+ * is not copied into the target class. That method is called directly
+ * instead. Since methods cannot be added to a class that is already
+ * loaded, a mixin can only be {@link #canRetransform() retransformed}
+ * if all of its handlers are of this kind.
+ *
+ * @since July 30, 2019
+ * @author Andavin
+ * @see MinecraftInjector#register(MixinInjector)
+ */
+public class MixinInjector implements Injector {
+
+    private static final String HANDLER_PREFIX = "mixin$";
+    private static final String MIXIN_DESC = Type.getDescriptor(Mixin.class);
+    private static final String SHADOW_DESC = Type.getDescriptor(Shadow.class);
+    private static final String OVERWRITE_DESC = Type.getDescriptor(Overwrite.class);
+    private static final String INJECT_DESC = Type.getDescriptor(Inject.class);
+    private static final String REDIRECT_DESC = Type.getDescriptor(Redirect.class);
+
+    private final Class<?> mixin;
+    private final String target, versionPrefix, versionDesc;
+    private final List<MethodNode> handlers = new ArrayList<>();
+    private final List<Operation> operations = new ArrayList<>();
+
+    /**
+     * Create a new injector for the given mixin class.
+     *
+     * @param mixin The class that is annotated with {@link Mixin}.
+     * @throws IllegalArgumentException If the class is not a valid mixin.
+     */
+    public MixinInjector(Class<?> mixin) {
+
+        this.mixin = mixin;
+        ClassNode source = read(mixin);
+        AnnotationNode annotation = findAnnotation(source.invisibleAnnotations, MIXIN_DESC);
+        checkArgument(annotation != null, "%s is not annotated with @Mixin", mixin.getName());
+        this.target = ((Type) getValue(annotation, "value")).getInternalName();
+        this.versionPrefix = VERSION_PREFIX + mixin.getName() + '-';
+        this.versionDesc = this.versionPrefix + getValue(annotation, "version");
+
+        for (FieldNode field : source.fields) {
+            // Constants are inlined by the compiler so they are never referenced
+            checkArgument(field.value != null || findAnnotation(field.invisibleAnnotations, SHADOW_DESC) != null,
+                    "field %s of mixin %s must be a constant or annotated with @Shadow", field.name, mixin.getName());
+        }
+
+        // Every method that is copied into the target that does not
+        // overwrite an existing method is renamed so it cannot collide
+        Map<String, String> mapping = new HashMap<>();
+        mapping.put(source.name, this.target);
+        String prefix = HANDLER_PREFIX + source.name.substring(source.name.lastIndexOf('/') + 1) + '$';
+        List<MethodNode> copied = new ArrayList<>();
+        for (MethodNode method : source.methods) {
+
+            if (method.name.equals("<init>") || findAnnotation(method.invisibleAnnotations, SHADOW_DESC) != null) {
+                continue;
+            }
+
+            checkArgument(!method.name.equals("<clinit>"), "mixin %s cannot have a static initializer", mixin.getName());
+            if (findAnnotation(method.invisibleAnnotations, OVERWRITE_DESC) == null) {
+                checkArgument((method.access & ACC_SYNTHETIC) != 0 ||
+                                findAnnotation(method.invisibleAnnotations, INJECT_DESC) != null ||
+                                findAnnotation(method.invisibleAnnotations, REDIRECT_DESC) != null,
+                        "method %s of mixin %s must be annotated", method.name, mixin.getName());
+                mapping.put(source.name + '.' + method.name + method.desc, prefix + method.name);
+            }
+
+            copied.add(method);
+        }
+
+        Remapper remapper = new SimpleRemapper(mapping);
+        for (MethodNode method : copied) {
+
+            MethodNode handler = new MethodNode(ASM7, method.access, remapper.mapMethodName(source.name, method.name, method.desc),
+                    remapper.mapMethodDesc(method.desc), remapper.mapSignature(method.signature, false),
+                    method.exceptions.toArray(new String[0]));
+            method.accept(new MethodRemapper(handler, remapper));
+            handler.visibleAnnotations = handler.invisibleAnnotations = null;
+            handler.visibleParameterAnnotations = handler.invisibleParameterAnnotations = null;
+            if (findAnnotation(method.invisibleAnnotations, OVERWRITE_DESC) != null) {
+                this.operations.add(new OverwriteOperation(handler));
+                continue;
+            }
+
+            // Copied methods are private, but keep if they are static
+            handler.access = ACC_PRIVATE | ACC_SYNTHETIC | handler.access & ACC_STATIC;
+            MethodInsnNode delegate = (handler.access & ACC_STATIC) != 0 ? findDelegate(handler, this.target) : null;
+            if (delegate == null) {
+                this.handlers.add(handler);
+            }
+
+            AnnotationNode inject = findAnnotation(method.invisibleAnnotations, INJECT_DESC);
+            if (inject != null) {
+                String[] at = (String[]) getValue(inject, "at");
+                this.operations.add(new InjectOperation((String) getValue(inject, "method"),
+                        at != null ? Inject.At.valueOf(at[1]) : Inject.At.HEAD, handler, delegate));
+                continue;
+            }
+
+            AnnotationNode redirect = findAnnotation(method.invisibleAnnotations, REDIRECT_DESC);
+            if (redirect != null) {
+                checkArgument((method.access & ACC_STATIC) != 0, "redirect %s of mixin %s must be static",
+                        method.name, mixin.getName());
+                this.operations.add(new RedirectOperation((String) getValue(redirect, "method"),
+                        (String) getValue(redirect, "target"), remapper, handler, delegate));
+            }
+        }
+    }
+
+    /**
+     * Get the class of the {@link Mixin} that is
+     * applied by this injector.
+     *
+     * @return The mixin class.
+     */
+    public Class<?> getMixin() {
+        return mixin;
+    }
+
+    /**
+     * Get the internal name of the class that the
+     * {@link Mixin} is applied to.
+     *
+     * @return The internal name of the target class.
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    @Override
+    public boolean inject(ClassNode node) {
+
+        if (findAnnotation(node.invisibleAnnotations, this.versionDesc) != null) {
+            return false;
+        }
+
+        // Find every method before anything is changed so that
+        // the class is not left partially altered
+        List<MethodNode> methods = new ArrayList<>(this.operations.size());
+        for (Operation operation : this.operations) {
+
+            MethodNode method = operation.find(node);
+            if (method == null) {
+                Logger.warn("Could not find method {} in {} for mixin {}.",
+                        operation.method, node.name, this.mixin.getName());
+                return false;
+            }
+
+            if (!operation.canApply(node, method)) {
+                return false;
+            }
+
+            methods.add(method);
+        }
+
+        for (MethodNode handler : this.handlers) {
+            node.methods.removeIf(method -> method.name.equals(handler.name) && method.desc.equals(handler.desc));
+            node.methods.add(copy(handler));
+        }
+
+        for (int i = 0; i < methods.size(); i++) {
+            this.operations.get(i).apply(node, methods.get(i));
+        }
+
+        if (node.invisibleAnnotations != null) { // Remove older versions
+            node.invisibleAnnotations.removeIf(annotation -> annotation.desc.startsWith(this.versionPrefix));
+        }
+
+        node.visitAnnotation(this.versionDesc, false);
+        return true;
+    }
+
+    @Override
+    public boolean canRetransform() {
+        return this.handlers.isEmpty(); // Methods cannot be added to loaded classes
+    }
+
+    private static ClassNode read(Class<?> clazz) {
+
+        ClassNode node = new ClassNode();
+        String name = Type.getInternalName(clazz) + ".class";
+        try (InputStream input = clazz.getClassLoader().getResourceAsStream(name)) {
+            checkArgument(input != null, "could not find the class file of %s", clazz.getName());
+            new ClassReader(input).accept(node, ClassReader.SKIP_FRAMES);
+            return node;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MethodNode copy(MethodNode method) {
+        MethodNode copy = new MethodNode(ASM7, method.access, method.name, method.desc,
+                method.signature, method.exceptions.toArray(new String[0]));
+        method.accept(copy);
+        return copy;
+    }
+
+    /**
+     * Find the invocation of the {@code static} method that the given
+     * handler forwards to if the handler does nothing other than pass
+     * all of its parameters in order to a {@code static} method of another
+     * class with the same descriptor and return its result.
+     *
+     * @param handler The handler to check.
+     * @param target The internal name of the target class.
+     * @return The invocation or {@code null} if the
+     *         handler does not only forward.
+     */
+    private static MethodInsnNode findDelegate(MethodNode handler, String target) {
+
+        int local = 0;
+        AbstractInsnNode insn = skipPseudo(handler.instructions.getFirst());
+        for (Type parameter : Type.getArgumentTypes(handler.desc)) {
+
+            if (insn == null || insn.getOpcode() != parameter.getOpcode(ILOAD) || ((VarInsnNode) insn).var != local) {
+                return null;
+            }
+
+            local += parameter.getSize();
+            insn = skipPseudo(insn.getNext());
+        }
+
+        if (insn == null || insn.getOpcode() != INVOKESTATIC) {
+            return null;
+        }
+
+        MethodInsnNode invocation = (MethodInsnNode) insn;
+        if (invocation.owner.equals(target) || !invocation.desc.equals(handler.desc)) {
+            return null;
+        }
+
+        insn = skipPseudo(insn.getNext());
+        if (insn == null || insn.getOpcode() != Type.getReturnType(handler.desc).getOpcode(IRETURN)) {
+            return null;
+        }
+
+        return skipPseudo(insn.getNext()) == null ? invocation : null;
+    }
+
+    private static AbstractInsnNode skipPseudo(AbstractInsnNode insn) {
+
+        // Labels, line numbers and frames are not actual instructions
+        while (insn != null && insn.getOpcode() == -1) {
+            insn = insn.getNext();
+        }
+
+        return insn;
+    }
+
+    private static AnnotationNode findAnnotation(List<AnnotationNode> annotations, String desc) {
+
+        if (annotations != null) {
+
+            for (AnnotationNode annotation : annotations) {
+
+                if (annotation.desc.equals(desc)) {
+                    return annotation;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static Object getValue(AnnotationNode annotation, String name) {
+
+        List<Object> values = annotation.values;
+        if (values != null) {
+
+            for (int i = 0; i < values.size(); i += 2) {
+
+                if (values.get(i).equals(name)) {
+                    return values.get(i + 1);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isInvoked(MethodNode method, String owner, String name, String desc) {
+
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+
+            if (insn instanceof MethodInsnNode) {
+
+                MethodInsnNode invocation = (MethodInsnNode) insn;
+                if (invocation.owner.equals(owner) && invocation.name.equals(name) && invocation.desc.equals(desc)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A single alteration to a method of the target class.
+     */
+    private abstract static class Operation {
+
+        final String method;
+        final MethodNode handler;
+        private final MethodInsnNode delegate;
+
+        /**
+         * @param method The name of the method to alter optionally
+         *               followed by its descriptor.
+         * @param handler The method from the mixin.
+         * @param delegate The invocation of the method that the handler
+         *                 forwards to and is called instead of it or
+         *                 {@code null} if the handler is copied.
+         */
+        Operation(String method, MethodNode handler, MethodInsnNode delegate) {
+            this.method = method;
+            this.handler = handler;
+            this.delegate = delegate;
+        }
+
+        /**
+         * Create an invocation of the handler (or the method that
+         * it forwards to) from a method of the given class.
+         *
+         * @param node The target class.
+         * @return The invocation.
+         */
+        MethodInsnNode invoke(ClassNode node) {
+
+            if (this.delegate != null) {
+                return new MethodInsnNode(INVOKESTATIC, this.delegate.owner,
+                        this.delegate.name, this.delegate.desc, this.delegate.itf);
+            }
+
+            return new MethodInsnNode((this.handler.access & ACC_STATIC) != 0 ? INVOKESTATIC : INVOKESPECIAL,
+                    node.name, this.handler.name, this.handler.desc, (node.access & ACC_INTERFACE) != 0);
+        }
+
+        /**
+         * Tell if the handler (or the method that it forwards to)
+         * is already invoked within the given method.
+         *
+         * @param node The target class.
+         * @param method The method to check.
+         * @return If the handler is invoked.
+         */
+        boolean isInvoked(ClassNode node, MethodNode method) {
+            return this.delegate != null ?
+                    MixinInjector.isInvoked(method, this.delegate.owner, this.delegate.name, this.delegate.desc) :
+                    MixinInjector.isInvoked(method, node.name, this.handler.name, this.handler.desc);
+        }
+
+        /**
+         * Find the method that this operation alters.
+         *
+         * @param node The target class.
+         * @return The method or {@code null} if it does not exist.
+         */
+        MethodNode find(ClassNode node) {
+
+            int index = this.method.indexOf('(');
+            String name = index == -1 ? this.method : this.method.substring(0, index);
+            for (MethodNode method : node.methods) {
+
+                if (method.name.equals(name) && (index == -1 || method.desc.equals(this.method.substring(index)))) {
+                    return method;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Tell if this operation can be applied to the given method
+         * and log a warning if it cannot. This is called before any
+         * of the operations are applied.
+         *
+         * @param node The target class.
+         * @param method The method to alter.
+         * @return If the operation can be applied.
+         */
+        boolean canApply(ClassNode node, MethodNode method) {
+            return true;
+        }
+
+        /**
+         * Apply this operation to the given method.
+         *
+         * @param node The target class.
+         * @param method The method to alter.
+         */
+        abstract void apply(ClassNode node, MethodNode method);
+    }
+
+    private static final class OverwriteOperation extends Operation {
+
+        OverwriteOperation(MethodNode handler) {
+            super(handler.name + handler.desc, handler, null);
+        }
+
+        @Override
+        void apply(ClassNode node, MethodNode method) {
+
+            MethodNode copy = copy(this.handler);
+            method.instructions = copy.instructions;
+            method.tryCatchBlocks = copy.tryCatchBlocks;
+            method.localVariables = copy.localVariables;
+            method.visibleLocalVariableAnnotations = copy.visibleLocalVariableAnnotations;
+            method.invisibleLocalVariableAnnotations = copy.invisibleLocalVariableAnnotations;
+            method.maxStack = copy.maxStack;
+            method.maxLocals = copy.maxLocals;
+            if (method.invisibleAnnotations != null) { // Remove hand written versions
+                method.invisibleAnnotations.removeIf(annotation -> annotation.desc.startsWith(VERSION_PREFIX));
+            }
+        }
+    }
+
+    private static final class InjectOperation extends Operation {
+
+        private final Inject.At at;
+
+        InjectOperation(String method, Inject.At at, MethodNode handler, MethodInsnNode delegate) {
+            super(method, handler, delegate);
+            this.at = at;
+        }
+
+        @Override
+        boolean canApply(ClassNode node, MethodNode method) {
+
+            Type[] parameters = Type.getArgumentTypes(this.handler.desc);
+            if (Type.getReturnType(this.handler.desc) != Type.VOID_TYPE || parameters.length != 0 &&
+                    !Arrays.equals(parameters, Type.getArgumentTypes(method.desc))) {
+                Logger.warn("Injection {}{} does not match the method {}{} in {}.",
+                        this.handler.name, this.handler.desc, method.name, method.desc, node.name);
+                return false;
+            }
+
+            if ((method.access & ACC_STATIC) != 0 && (this.handler.access & ACC_STATIC) == 0) {
+                Logger.warn("Injection {} must be static to inject into {} in {}.",
+                        this.handler.name, method.name, node.name);
+                return false;
+            }
+
+            if (this.at == Inject.At.HEAD && method.name.equals("<init>")) {
+                Logger.warn("Injection {} cannot be at the head of a constructor in {}.", this.handler.name, node.name);
+                return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        void apply(ClassNode node, MethodNode method) {
+
+            if (this.isInvoked(node, method)) {
+                return; // Already injected by a previous version
+            }
+
+            if (this.at == Inject.At.HEAD) {
+                method.instructions.insert(this.invoke(node, method));
+                return;
+            }
+
+            for (AbstractInsnNode insn : method.instructions.toArray()) {
+
+                if (insn.getOpcode() >= IRETURN && insn.getOpcode() <= RETURN) {
+                    method.instructions.insertBefore(insn, this.invoke(node, method));
+                }
+            }
+        }
+
+        private InsnList invoke(ClassNode node, MethodNode method) {
+
+            InsnList insns = new InsnList();
+            boolean isStatic = (this.handler.access & ACC_STATIC) != 0;
+            if (!isStatic) {
+                insns.add(new VarInsnNode(ALOAD, 0));
+            }
+
+            if (Type.getArgumentTypes(this.handler.desc).length != 0) {
+
+                int index = (method.access & ACC_STATIC) != 0 ? 0 : 1;
+                for (Type parameter : Type.getArgumentTypes(method.desc)) {
+                    insns.add(new VarInsnNode(parameter.getOpcode(ILOAD), index));
+                    index += parameter.getSize();
+                }
+            }
+
+            insns.add(this.invoke(node));
+            return insns;
+        }
+    }
+
+    private static final class RedirectOperation extends Operation {
+
+        private final String owner, name, desc;
+
+        RedirectOperation(String method, String target, Remapper remapper, MethodNode handler, MethodInsnNode delegate) {
+
+            super(method, handler, delegate);
+            int index = target.indexOf('('), dot = target.lastIndexOf('.', index);
+            checkArgument(index != -1 && dot != -1, "invalid redirect target %s", target);
+            this.owner = remapper.mapType(target.substring(0, dot).replace('.', '/'));
+            this.name = target.substring(dot + 1, index);
+            this.desc = remapper.mapMethodDesc(target.substring(index));
+        }
+
+        @Override
+        boolean canApply(ClassNode node, MethodNode method) {
+
+            boolean found = false;
+            for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+
+                if (this.matches(insn)) {
+
+                    MethodInsnNode invocation = (MethodInsnNode) insn;
+                    String desc = invocation.getOpcode() == INVOKESTATIC ? this.desc :
+                            "(L" + this.owner + ';' + this.desc.substring(1);
+                    if (!this.handler.desc.equals(desc)) {
+                        Logger.warn("Redirect {}{} does not match the descriptor {} in {}.",
+                                this.handler.name, this.handler.desc, desc, node.name);
+                        return false;
+                    }
+
+                    found = true;
+                }
+            }
+
+            if (!found && !this.isInvoked(node, method)) {
+                Logger.warn("Could not find an invocation of {}.{}{} in {} to redirect.",
+                        this.owner, this.name, this.desc, method.name);
+                return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        void apply(ClassNode node, MethodNode method) {
+
+            for (AbstractInsnNode insn : method.instructions.toArray()) {
+
+                if (this.matches(insn)) {
+                    method.instructions.set(insn, this.invoke(node));
+                }
+            }
+        }
+
+        private boolean matches(AbstractInsnNode insn) {
+
+            if (!(insn instanceof MethodInsnNode) || insn.getOpcode() == INVOKESPECIAL) {
+                return false;
+            }
+
+            MethodInsnNode invocation = (MethodInsnNode) insn;
+            return invocation.owner.equals(this.owner) && invocation.name.equals(this.name) &&
+                    invocation.desc.equals(this.desc);
+        }
+    }
+}
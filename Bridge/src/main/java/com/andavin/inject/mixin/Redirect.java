@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.inject.mixin;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code static} method of a {@link Mixin} that replaces
+ * every invocation of the {@link #target() target method} within
+ * the given {@link #method() method} of the target class.
+ * <p>
+ * The annotated method must return the same type as the target
+ * method and take the same parameters. If the target method is not
+ * {@code static}, then the instance it is invoked on is passed as
+ * the first parameter.
+ * <p>
+ * If the annotated method only passes its parameters on to a
+ * {@code static} method of another class, then that method is
+ * called directly and nothing is copied into the target class.
+ *
+ * @since July 30, 2019
+ * @author Andavin
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface Redirect {
+
+    /**
+     * The method in which to redirect invocations. This is either
+     * just the name of the method or the name followed by its
+     * descriptor if the method is overloaded.
+     *
+     * @return The method to redirect invocations in.
+     */
+    String method();
+
+    /**
+     * The method whose invocations are redirected given as the
+     * owner, name and descriptor of the method (e.g.
+     * {@code net/minecraft/server/v1_13_R2/ServerConnection.c()V}).
+     *
+     * @return The method to redirect.
+     */
+    String target();
+}
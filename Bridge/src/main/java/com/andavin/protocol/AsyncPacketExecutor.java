@@ -0,0 +1,171 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.protocol;
+
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The executor that {@link ProtocolManager#registerAsync(Class, PacketListener)
+ * asynchronous} packet listeners are called on.
+ * <p>
+ * Packets are handed off to one of a fixed number of single
+ * threaded stripes that is chosen by the player the packet was
+ * sent to or received from. This way all of the packets for a
+ * single player are handled in the order they were sent or received
+ * while packets for different players can be handled in parallel.
+ * <p>
+ * Each stripe has a bounded queue. If a stripe falls behind and
+ * its queue fills up, then any further packets for that stripe are
+ * dropped rather than blocking the network threads. The amount of
+ * packets dropped along with the current queue depth and the time
+ * packets spend waiting in the queue can be retrieved from this class.
+ *
+ * @since July 14, 2019
+ * @author Andavin
+ */
+public final class AsyncPacketExecutor {
+
+    private final ThreadPoolExecutor[] stripes;
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder latency = new LongAdder();
+    private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+
+    AsyncPacketExecutor(int threads, int capacity) {
+
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread thread = new Thread(task, "NMSUtils Async Packet Thread #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        this.stripes = new ThreadPoolExecutor[threads];
+        for (int i = 0; i < threads; i++) {
+            this.stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(capacity), factory, new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    /**
+     * Get the amount of packets that are currently waiting
+     * to be handled across all of the stripes.
+     *
+     * @return The current queue depth.
+     */
+    public int getQueueDepth() {
+
+        int depth = 0;
+        for (ThreadPoolExecutor stripe : this.stripes) {
+            depth += stripe.getQueue().size();
+        }
+
+        return depth;
+    }
+
+    /**
+     * Get the total amount of packets that have been
+     * handled by this executor.
+     *
+     * @return The amount of packets handled.
+     */
+    public long getExecuted() {
+        return this.executed.sum();
+    }
+
+    /**
+     * Get the total amount of packets that have been dropped
+     * because the queue for their stripe was full.
+     *
+     * @return The amount of packets dropped.
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Get the average time that packets have waited in the
+     * queue before they were handled.
+     *
+     * @param unit The {@link TimeUnit} to get the time in.
+     * @return The average queue latency in the given unit.
+     */
+    public long getAverageLatency(TimeUnit unit) {
+        long executed = this.executed.sum();
+        return executed == 0 ? 0 : unit.convert(this.latency.sum() / executed, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the longest time that any packet has waited in
+     * the queue before it was handled.
+     *
+     * @param unit The {@link TimeUnit} to get the time in.
+     * @return The maximum queue latency in the given unit.
+     */
+    public long getMaxLatency(TimeUnit unit) {
+        return unit.convert(this.maxLatency.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Execute the given task on the stripe that belongs to the
+     * player with the given {@link UUID}. If the queue for that
+     * stripe is full, then the task will be dropped.
+     *
+     * @param playerId The UUID of the player the task is for.
+     * @param task The task to execute.
+     */
+    void execute(UUID playerId, Runnable task) {
+
+        long queued = System.nanoTime();
+        ThreadPoolExecutor stripe = this.stripes[(playerId.hashCode() & Integer.MAX_VALUE) % this.stripes.length];
+        try {
+            stripe.execute(() -> {
+
+                long waited = System.nanoTime() - queued;
+                this.latency.add(waited);
+                this.maxLatency.accumulate(waited);
+                this.executed.increment();
+                task.run();
+            });
+        } catch (RejectedExecutionException e) {
+            this.dropped.increment();
+        }
+    }
+
+    /**
+     * Shutdown all of the stripes of this executor. Any packets
+     * that are already queued will still be handled.
+     */
+    void shutdown() {
+
+        for (ThreadPoolExecutor stripe : this.stripes) {
+            stripe.shutdown();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.protocol;
+
+import org.bukkit.entity.Player;
+
+import java.util.List;
+
+/**
+ * An overlay of extra content that is sent to a player along with
+ * every chunk that is sent to them. This is called on the network
+ * thread of the player each time a map chunk packet is written and
+ * the packets that it returns are written directly after the chunk
+ * in the same flush, so they are never seen before the chunk itself
+ * and are sent again every time the chunk is resent to the player.
+ * <p>
+ * Since this is called on the network threads, implementations
+ * must be thread safe and should return as quickly as possible.
+ * The returned packets are written directly to the pipeline and
+ * are <b>not</b> passed to any {@link PacketListener}s.
+ *
+ * @since August 02, 2019
+ * @author Andavin
+ * @see ProtocolManager#addChunkOverlay(ChunkOverlay)
+ */
+@FunctionalInterface
+public interface ChunkOverlay {
+
+    /**
+     * Get the packets that should be sent to the given player
+     * directly after the chunk with the given coordinates.
+     *
+     * @param player The player that the chunk is being sent to.
+     * @param x The X coordinate of the chunk.
+     * @param z The Z coordinate of the chunk.
+     * @return The packets to send after the chunk or {@code null}
+     *         if there is nothing to send for the chunk.
+     */
+    List<?> overlay(Player player, int x, int z);
+}
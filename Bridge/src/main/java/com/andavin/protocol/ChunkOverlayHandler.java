@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.protocol;
+
+import com.andavin.util.Logger;
+import com.andavin.util.LongHash;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+
+/**
+ * The {@link ChannelHandler} that is placed in the pipeline of
+ * every connection between the {@code packet_handler} and the
+ * {@code encoder} while there are any {@link ChunkOverlay}s
+ * registered. It writes the packets of each overlay directly
+ * after every map chunk packet that passes through it.
+ *
+ * @since August 02, 2019
+ * @author Andavin
+ */
+@ChannelHandler.Sharable
+final class ChunkOverlayHandler extends ChannelOutboundHandlerAdapter {
+
+    private final ProtocolManager manager;
+
+    ChunkOverlayHandler(ProtocolManager manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+
+        ctx.write(msg, promise);
+        long[] chunks = this.manager.getChunks(msg);
+        if (chunks == null) {
+            return;
+        }
+
+        ChunkOverlay[] overlays = this.manager.getChunkOverlays();
+        Player player = overlays.length != 0 ? this.manager.getPlayer(ctx.channel()) : null;
+        if (player == null) {
+            return;
+        }
+
+        for (long chunk : chunks) {
+
+            int x = LongHash.msw(chunk), z = LongHash.lsw(chunk);
+            for (ChunkOverlay overlay : overlays) {
+
+                try {
+
+                    List<?> packets = overlay.overlay(player, x, z);
+                    if (packets != null) {
+
+                        for (Object packet : packets) {
+                            ctx.write(packet, ctx.voidPromise());
+                        }
+                    }
+                } catch (Throwable e) {
+                    Logger.severe(e, "Failed to overlay chunk ({}, {}) for {} with {}",
+                            x, z, player.getName(), overlay.getClass());
+                }
+            }
+        }
+    }
+}
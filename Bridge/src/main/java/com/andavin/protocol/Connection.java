@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.protocol;
+
+import java.net.SocketAddress;
+
+/**
+ * A connection to a Minecraft client that does not yet
+ * (and may never) have a {@link org.bukkit.entity.Player}
+ * associated with it.
+ * <p>
+ * This is given to {@link ConnectionListener}s for packets
+ * that are sent or received during the {@code Handshaking},
+ * {@code Status} and {@code Login} protocols.
+ *
+ * @since July 21, 2019
+ * @author Andavin
+ */
+public interface Connection {
+
+    /**
+     * Get the address of the client that this
+     * connection is connected to.
+     *
+     * @return The address of the client.
+     */
+    SocketAddress getAddress();
+
+    /**
+     * Get the name that the client sent when it started to log in.
+     *
+     * @return The name of the client or {@code null} if the
+     *         client has not yet started to log in.
+     */
+    String getName();
+
+    /**
+     * Tell if this connection is currently open.
+     *
+     * @return If this connection is open.
+     */
+    boolean isOpen();
+
+    /**
+     * Close this connection immediately without
+     * sending anything further to the client.
+     */
+    void close();
+}
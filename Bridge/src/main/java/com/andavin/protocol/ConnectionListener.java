@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.protocol;
+
+/**
+ * A packet listener that can handle packets being sent to or
+ * coming from a {@link Connection} before a player exists for it.
+ * <p>
+ * Unlike a {@link PacketListener} this listener is called for packets
+ * in the {@code Handshaking}, {@code Status} and {@code Login} protocols
+ * (e.g. {@code PacketHandshakingInSetProtocol}, {@code PacketStatusInStart}
+ * or {@code PacketLoginInStart}). This allows for connections to be rejected
+ * before the server does any of the work to log them in.
+ * <p>
+ * The same as a {@link PacketListener}, thread blocking should
+ * <b>not</b> occur within one of these listeners as it will block
+ * all network traffic for the connection.
+ *
+ * @param <T> The type of packet that is being listened for.
+ * @see ProtocolManager#registerConnection(Class, ConnectionListener)
+ * @since July 21, 2019
+ * @author Andavin
+ */
+@FunctionalInterface
+public interface ConnectionListener<T> {
+
+    /**
+     * Handle a packet being sent to or from a connection.
+     *
+     * @param connection The connection the packet is being sent to or from.
+     * @param packet The packet that is being sent.
+     * @return The packet that should be sent. In order to stop a packet
+     *         from continuing to be sent or received {@code null} should
+     *         be returned from this method.
+     */
+    T handle(Connection connection, T packet);
+
+    /**
+     * Handle a packet being sent to or from a connection.
+     *
+     * @param connection The connection the packet is being sent to or from.
+     * @param msg The packet that is being sent.
+     * @return The packet that should be sent. In order to stop a packet
+     *         from continuing to be sent or received {@code null} should
+     *         be returned from this method.
+     */
+    default T handleMsg(Connection connection, Object msg) {
+        return this.handle(connection, (T) msg);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.protocol;
+
+import com.andavin.reflect.FieldAccessor;
+import com.andavin.reflect.exception.UncheckedNoSuchFieldException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link FieldAccessor}s for every field of a single packet class.
+ * <p>
+ * The fields of a packet class are resolved a single time when its
+ * accessor is first requested and the accessor is then shared by
+ * everything that uses the same packet class. This way listeners that
+ * read or rewrite the obfuscated fields of packets do not need to go
+ * through reflection for every packet:
+ * <pre>
+ *     private static final FieldAccessor&lt;Object&gt; POSITION =
+ *             PacketAccessor.of(PacketPlayOutBlockChange.class).field("a");
+ *
+ *     Object position = POSITION.get(packet);
+ * </pre>
+ *
+ * @since July 23, 2019
+ * @author Andavin
+ */
+public final class PacketAccessor {
+
+    private static final ClassValue<PacketAccessor> ACCESSORS = new ClassValue<PacketAccessor>() {
+
+        @Override
+        protected PacketAccessor computeValue(Class<?> type) {
+            return new PacketAccessor(type);
+        }
+    };
+
+    private final Class<?> packetClass;
+    private final List<FieldAccessor<?>> fields;
+    private final Map<String, FieldAccessor<?>> byName;
+
+    private PacketAccessor(Class<?> packetClass) {
+
+        this.packetClass = packetClass;
+        Field[] declared = packetClass.getDeclaredFields();
+        this.fields = new ArrayList<>(declared.length);
+        this.byName = new HashMap<>(declared.length);
+        for (Field field : declared) {
+
+            if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                FieldAccessor<?> accessor = new FieldAccessor<>(field);
+                this.fields.add(accessor);
+                this.byName.put(field.getName(), accessor);
+            }
+        }
+    }
+
+    /**
+     * Get the accessor for the given packet class.
+     *
+     * @param packetClass The class of the packet.
+     * @return The accessor for the packet class.
+     */
+    public static PacketAccessor of(Class<?> packetClass) {
+        return ACCESSORS.get(packetClass);
+    }
+
+    /**
+     * Get the class of the packet that this accessor is for.
+     *
+     * @return The packet class.
+     */
+    public Class<?> getPacketClass() {
+        return packetClass;
+    }
+
+    /**
+     * Get the {@link FieldAccessor} for the field with the given name.
+     *
+     * @param name The name of the field.
+     * @param <T> The type of the field.
+     * @return The accessor for the field.
+     * @throws UncheckedNoSuchFieldException If the packet class does
+     *                                       not declare the field.
+     */
+    public <T> FieldAccessor<T> field(String name) throws UncheckedNoSuchFieldException {
+
+        FieldAccessor<?> accessor = this.byName.get(name);
+        if (accessor == null) {
+            throw new UncheckedNoSuchFieldException("Could not find field " + name + " in " + this.packetClass);
+        }
+
+        return (FieldAccessor<T>) accessor;
+    }
+
+    /**
+     * Get the {@link FieldAccessor} for a field of the given type.
+     * The index is used when a packet class declares multiple fields
+     * of the same type (e.g. {@code 0} for the first {@code int} field).
+     * This is useful for fields whose obfuscated names differ between
+     * versions while their order stays the same.
+     *
+     * @param type The type of the field.
+     * @param index The index of the field among the fields of the type.
+     * @param <T> The type of the field.
+     * @return The accessor for the field.
+     * @throws UncheckedNoSuchFieldException If the packet class does not
+     *                                       declare enough fields of the type.
+     */
+    public <T> FieldAccessor<T> field(Class<T> type, int index) throws UncheckedNoSuchFieldException {
+
+        int found = 0;
+        for (FieldAccessor<?> accessor : this.fields) {
+
+            if (accessor.getField().getType() == type && found++ == index) {
+                return (FieldAccessor<T>) accessor;
+            }
+        }
+
+        throw new UncheckedNoSuchFieldException("Could not find field " + index + " of type " +
+                type.getSimpleName() + " in " + this.packetClass);
+    }
+}
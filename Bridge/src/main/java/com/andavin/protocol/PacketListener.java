@@ -43,12 +43,17 @@ import org.bukkit.entity.Player;
  * {@code PacketLoginInStart} or {@code PacketLoginOutEncryptionBegin},
  * cannot be listened to via this class. These include most packets
  * that are not included in the {@code Play} or {@code Status} protocol
- * categories (i.e. {@code Login} or {@code Handshaking}).
+ * categories (i.e. {@code Login} or {@code Handshaking}). To listen to
+ * those packets a {@link ConnectionListener} can be used instead.
  * <p>
  * Note that it is immensely important that thread blocking
  * does <b>not</b> occur within one of these listeners as it
  * will block all network traffic to or from the player and can
- * severely lag their gameplay.
+ * severely lag their gameplay. Listeners that only need to observe
+ * packets can be {@link ProtocolManager#registerAsync(Class, PacketListener)
+ * registered asynchronously} so that they are called off of the network threads.
+ * Fields of packets should be read and written through a {@link PacketAccessor}
+ * rather than reflection for the same reason.
  *
  * @param <T> The type of packet that is being listened for.
  * @see ProtocolManager#register(Class, ProtocolPriority, PacketListener)
@@ -0,0 +1,294 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.protocol;
+
+import com.andavin.inject.InjectorVersion;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A {@link io.netty.channel.ChannelHandler} that is placed in the
+ * pipeline of every connection directly after the packet splitter
+ * and limits the rate at which packets may be received using a
+ * token bucket for the connection as a whole and, optionally, for
+ * individual packets in the {@code Play} protocol.
+ * <p>
+ * Since this handler comes before the decoder, packets that are
+ * over the limit are dropped (or the connection is closed) before
+ * any work is done to decode them or pass them to listeners.
+ * <p>
+ * This class is injected into the server JAR along with the
+ * server connection and therefore may only reference classes that
+ * are available to the server itself.
+ *
+ * @since July 18, 2019
+ * @author Andavin
+ */
+@InjectorVersion("1.0")
+public class PacketRateLimiter extends ChannelInboundHandlerAdapter {
+
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final LongAdder DISCONNECTED = new LongAdder();
+
+    private final Supplier<Settings> settings;
+    private final AttributeKey<?> protocolKey;
+    private final Object playProtocol;
+
+    private double tokens = -1;
+    private long lastRefill;
+    private double[] packetTokens;
+    private long[] packetRefills;
+
+    /**
+     * Create a new rate limiter for a single connection.
+     *
+     * @param settings The supplier of the current {@link Settings}
+     *                 or {@code null} if there are no limits.
+     * @param protocolKey The key to the attribute that holds the
+     *                    current protocol of the connection.
+     * @param playProtocol The {@code Play} protocol.
+     */
+    public PacketRateLimiter(Supplier<Settings> settings, AttributeKey<?> protocolKey, Object playProtocol) {
+        this.settings = settings;
+        this.protocolKey = protocolKey;
+        this.playProtocol = playProtocol;
+    }
+
+    /**
+     * Get the total amount of packets that have been dropped
+     * for being over the rate limit.
+     *
+     * @return The amount of dropped packets.
+     */
+    public static long getDropped() {
+        return DROPPED.sum();
+    }
+
+    /**
+     * Get the total amount of connections that have been
+     * closed for going over the rate limit.
+     *
+     * @return The amount of closed connections.
+     */
+    public static long getDisconnected() {
+        return DISCONNECTED.sum();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+
+        Settings settings = this.settings.get();
+        if (settings != null && msg instanceof ByteBuf && !this.tryAcquire(ctx, (ByteBuf) msg, settings)) {
+
+            DROPPED.increment();
+            ReferenceCountUtil.release(msg);
+            if (settings.disconnect && ctx.channel().isOpen()) {
+                DISCONNECTED.increment();
+                ctx.close();
+            }
+
+            return;
+        }
+
+        ctx.fireChannelRead(msg);
+    }
+
+    private boolean tryAcquire(ChannelHandlerContext ctx, ByteBuf buf, Settings settings) {
+
+        long now = System.nanoTime();
+        if (settings.rate > 0) {
+
+            if (this.tokens < 0) { // Start with a full bucket
+                this.tokens = settings.burst;
+                this.lastRefill = now;
+            }
+
+            this.tokens = Math.min(settings.burst, this.tokens + (now - this.lastRefill) * settings.rate / 1E9);
+            this.lastRefill = now;
+            if (this.tokens < 1) {
+                return false;
+            }
+
+            this.tokens--;
+        }
+
+        int[] rates = settings.packetRates;
+        if (rates.length == 0 || ctx.channel().attr(this.protocolKey).get() != this.playProtocol) {
+            return true;
+        }
+
+        int id = readPacketId(buf, ctx.pipeline().get("decompress") != null);
+        if (id < 0 || id >= rates.length || rates[id] <= 0) {
+            return true;
+        }
+
+        if (this.packetTokens == null || this.packetTokens.length != rates.length) {
+            this.packetTokens = new double[rates.length];
+            this.packetRefills = new long[rates.length];
+            for (int i = 0; i < rates.length; i++) {
+                this.packetTokens[i] = settings.packetBursts[i];
+                this.packetRefills[i] = now;
+            }
+        }
+
+        double tokens = Math.min(settings.packetBursts[id],
+                this.packetTokens[id] + (now - this.packetRefills[id]) * rates[id] / 1E9);
+        this.packetRefills[id] = now;
+        if (tokens < 1) {
+            this.packetTokens[id] = tokens;
+            return false;
+        }
+
+        this.packetTokens[id] = tokens - 1;
+        return true;
+    }
+
+    /**
+     * Read the ID of the packet at the beginning of the
+     * given frame without changing the reader index.
+     *
+     * @param buf The frame to read the packet ID from.
+     * @param compressed If compression is enabled for the connection.
+     * @return The packet ID or {@code -1} if it could not be read
+     *         without decompressing or decoding the frame.
+     */
+    private static int readPacketId(ByteBuf buf, boolean compressed) {
+
+        int index = buf.readerIndex(), end = buf.writerIndex();
+        if (compressed) {
+
+            // Only packets under the compression threshold
+            // (a data length of 0) can be read without inflating
+            if (index >= end || buf.getByte(index) != 0) {
+                return -1;
+            }
+
+            index++;
+        }
+
+        int value = 0;
+        for (int i = 0; i < 5 && index < end; i++) {
+
+            byte b = buf.getByte(index++);
+            value |= (b & 0x7F) << i * 7;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * The immutable limits that are used by a {@link PacketRateLimiter}.
+     */
+    public static final class Settings {
+
+        private final double rate, burst;
+        private final int[] packetRates, packetBursts;
+        private final boolean disconnect;
+        private final int connections;
+        private final long connectionWindow;
+
+        /**
+         * Create new settings for the rate limiter.
+         *
+         * @param rate The amount of packets per second that a connection
+         *             may receive or {@code 0} if there is no limit.
+         * @param burst The amount of packets that may be received at
+         *              once before the rate applies.
+         * @param packetRates The amount of packets per second for each
+         *                    {@code Play} packet ID or {@code 0} if there
+         *                    is no limit for that packet ID.
+         * @param packetBursts The burst for each {@code Play} packet ID.
+         * @param disconnect If the connection should be closed when a packet
+         *                   is over the limit rather than just dropping it.
+         * @param connections The amount of connections that may be opened
+         *                    from a single address within the connection window
+         *                    or {@code 0} if there is no limit.
+         * @param connectionWindow The time in milliseconds of the connection window.
+         */
+        public Settings(double rate, double burst, int[] packetRates, int[] packetBursts,
+                        boolean disconnect, int connections, long connectionWindow) {
+            this.rate = rate;
+            this.burst = Math.max(1, burst);
+            this.packetRates = packetRates.clone();
+            this.packetBursts = packetBursts.clone();
+            this.disconnect = disconnect;
+            this.connections = connections;
+            this.connectionWindow = connectionWindow;
+        }
+    }
+
+    /**
+     * A throttle that limits how many connections may be opened
+     * from a single address within a window of time.
+     */
+    public static final class ConnectionThrottle {
+
+        private static final int PURGE_SIZE = 1024;
+        private final Map<InetAddress, long[]> connections = new HashMap<>();
+
+        /**
+         * Attempt to open a new connection from the given address.
+         *
+         * @param address The remote address of the connection.
+         * @param settings The current settings or {@code null}
+         *                 if there are no limits.
+         * @return If the connection is allowed to be opened.
+         */
+        public synchronized boolean tryConnect(SocketAddress address, Settings settings) {
+
+            if (settings == null || settings.connections <= 0 || !(address instanceof InetSocketAddress)) {
+                return true;
+            }
+
+            long now = System.currentTimeMillis();
+            if (this.connections.size() >= PURGE_SIZE) {
+                this.connections.values().removeIf(window -> now - window[0] >= settings.connectionWindow);
+            }
+
+            InetAddress ip = ((InetSocketAddress) address).getAddress();
+            long[] window = this.connections.get(ip);
+            if (window == null || now - window[0] >= settings.connectionWindow) {
+                this.connections.put(ip, new long[]{ now, 1 });
+                return true;
+            }
+
+            return ++window[1] <= settings.connections;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.protocol;
+
+import com.andavin.util.Logger;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A recorder that writes the raw packet stream of connections to
+ * disk so that it can later be {@link PacketReplay replayed}.
+ * <p>
+ * Frames are recorded directly after the {@code splitter} and rate
+ * {@code limiter} (inbound) and directly before the {@code prepender}
+ * (outbound). This means
+ * that they are recorded without their length prefix and after they
+ * have been decrypted, but they may still be compressed if compression
+ * is enabled for the connection.
+ * <p>
+ * The frames are written to memory mapped segment files within a
+ * directory. Once a segment is full, a new segment is created. Each
+ * frame within a segment has the following layout:
+ * <pre>
+ *     int  length of the payload (0 marks the end of the segment)
+ *     byte flags ({@link #OUTBOUND}, {@link #COMPRESSED} and {@link #METADATA})
+ *     int  connection ID
+ *     long nanoseconds since the recording started
+ *     byte[length] payload
+ * </pre>
+ * Whenever a connection is added to the recording, a metadata frame
+ * that contains the UUID and name of the player is written for it.
+ *
+ * @since July 24, 2019
+ * @author Andavin
+ * @see ProtocolManager#startRecording(org.bukkit.entity.Player, PacketRecorder)
+ */
+public final class PacketRecorder implements Closeable {
+
+    /**
+     * The flag of a frame that was sent to the client.
+     */
+    public static final byte OUTBOUND = 1;
+
+    /**
+     * The flag of a frame whose payload is compressed.
+     */
+    public static final byte COMPRESSED = 1 << 1;
+
+    /**
+     * The flag of a frame that holds information about
+     * a connection rather than a packet.
+     */
+    public static final byte METADATA = 1 << 2;
+
+    static final String SEGMENT_PREFIX = "segment-", SEGMENT_SUFFIX = ".bin";
+    static final int HEADER_SIZE = 4 + 1 + 4 + 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long start = System.nanoTime();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private int segment;
+    private boolean closed;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    /**
+     * Create a new recorder that writes to the given directory.
+     *
+     * @param directory The directory to write the segments to.
+     * @param segmentSize The size in bytes of each segment.
+     * @throws IOException If the directory or first segment
+     *                     could not be created.
+     */
+    public PacketRecorder(Path directory, int segmentSize) throws IOException {
+        checkArgument(segmentSize > HEADER_SIZE, "segment size must be greater than %s", HEADER_SIZE);
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.nextSegment();
+    }
+
+    /**
+     * Get the directory that this recorder writes to.
+     *
+     * @return The directory.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Tell if this recorder has been closed.
+     *
+     * @return If this recorder is closed.
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (!this.closed) {
+            this.closed = true;
+            this.buffer.force();
+            this.buffer = null;
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Add a new connection to this recording.
+     *
+     * @param description The description of the connection
+     *                    that is written into the metadata frame.
+     * @return The ID of the connection.
+     */
+    int addConnection(String description) {
+
+        int connection = this.connections.incrementAndGet();
+        byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+
+            if (this.reserve(bytes.length, METADATA, connection)) {
+                this.buffer.put(bytes);
+            }
+        }
+
+        return connection;
+    }
+
+    /**
+     * Create the handler that records frames that are
+     * received from a connection.
+     *
+     * @param connection The ID of the connection.
+     * @return The inbound handler.
+     */
+    ChannelInboundHandlerAdapter createInbound(int connection) {
+
+        return new ChannelInboundHandlerAdapter() {
+
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+
+                if (msg instanceof ByteBuf) {
+                    record(connection, (byte) (ctx.pipeline().get("decompress") != null ? COMPRESSED : 0), (ByteBuf) msg);
+                }
+
+                ctx.fireChannelRead(msg);
+            }
+        };
+    }
+
+    /**
+     * Create the handler that records frames that are
+     * sent to a connection.
+     *
+     * @param connection The ID of the connection.
+     * @return The outbound handler.
+     */
+    ChannelOutboundHandlerAdapter createOutbound(int connection) {
+
+        return new ChannelOutboundHandlerAdapter() {
+
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+
+                if (msg instanceof ByteBuf) {
+                    record(connection, (byte) (OUTBOUND | (ctx.pipeline().get("compress") != null ? COMPRESSED : 0)), (ByteBuf) msg);
+                }
+
+                ctx.write(msg, promise);
+            }
+        };
+    }
+
+    private synchronized void record(int connection, byte flags, ByteBuf frame) {
+
+        int length = frame.readableBytes();
+        if (length == 0 || !this.reserve(length, flags, connection)) {
+            return;
+        }
+
+        // Copy straight from the frame into the mapped segment
+        ByteBuffer buffer = this.buffer;
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + length);
+        frame.getBytes(frame.readerIndex(), buffer);
+        buffer.limit(limit);
+    }
+
+    /**
+     * Write the header of a frame and make sure that there is enough
+     * room in the current segment for its payload.
+     *
+     * @return If the payload should be written.
+     */
+    private boolean reserve(int length, byte flags, int connection) {
+
+        if (this.closed) {
+            return false;
+        }
+
+        int size = HEADER_SIZE + length;
+        if (size > this.segmentSize - 4) { // Leave room for the end marker
+            Logger.warn("Frame of {} bytes is too large for the recording segments and was skipped.", length);
+            return false;
+        }
+
+        try {
+
+            if (this.buffer.remaining() < size + 4) {
+                this.nextSegment();
+            }
+        } catch (IOException e) {
+            Logger.severe(e, "Failed to create a new recording segment in {}", this.directory);
+            this.closed = true;
+            return false;
+        }
+
+        this.buffer.putInt(length).put(flags).putInt(connection).putLong(System.nanoTime() - this.start);
+        return true;
+    }
+
+    private void nextSegment() throws IOException {
+
+        if (this.channel != null) {
+            this.buffer.force();
+            this.channel.close();
+        }
+
+        Path file = this.directory.resolve(String.format("%s%05d%s", SEGMENT_PREFIX, this.segment++, SEGMENT_SUFFIX));
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // The segment is filled with zeros which marks the end of the frames
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.andavin.protocol.PacketRecorder.*;
+
+/**
+ * A reader for the segments that are written by a {@link PacketRecorder}.
+ * <p>
+ * The frames are read in the order they were recorded straight from
+ * the memory mapped segments without being copied. A recording can be
+ * passed back through the packet decoder and the listeners registered
+ * with a {@link ProtocolManager} via {@link ProtocolManager#replay(PacketReplay,
+ * org.bukkit.entity.Player)} in order to measure how the listeners perform
+ * against real traffic.
+ *
+ * @since July 24, 2019
+ * @author Andavin
+ */
+public final class PacketReplay {
+
+    private final Path directory;
+
+    /**
+     * Create a new replay of the recording in the given directory.
+     *
+     * @param directory The directory that the recording was written to.
+     */
+    public PacketReplay(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the directory of the recording.
+     *
+     * @return The directory.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Pass every frame of the recording to the given handler in
+     * the order that they were recorded. The payload that is passed
+     * to the handler is only valid until the handler returns.
+     *
+     * @param handler The handler to pass the frames to.
+     * @throws IOException If a segment could not be read.
+     */
+    public void forEachFrame(FrameHandler handler) throws IOException {
+
+        for (Path segment : this.getSegments()) {
+
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (buffer.remaining() >= HEADER_SIZE) {
+
+                    int length = buffer.getInt();
+                    if (length <= 0 || length > buffer.remaining() - (HEADER_SIZE - 4)) {
+                        break; // End of the segment
+                    }
+
+                    byte flags = buffer.get();
+                    int connection = buffer.getInt();
+                    long time = buffer.getLong();
+                    ByteBuffer payload = buffer.slice();
+                    payload.limit(length);
+                    buffer.position(buffer.position() + length);
+                    handler.handle(connection, flags, time, Unpooled.wrappedBuffer(payload));
+                }
+            }
+        }
+    }
+
+    private List<Path> getSegments() throws IOException {
+
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory,
+                SEGMENT_PREFIX + '*' + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+
+        Collections.sort(segments); // The segment numbers are zero padded
+        return segments;
+    }
+
+    /**
+     * A handler for the frames of a recording.
+     */
+    @FunctionalInterface
+    public interface FrameHandler {
+
+        /**
+         * Handle a single frame of the recording.
+         *
+         * @param connection The ID of the connection the frame belongs to.
+         * @param flags The flags of the frame (e.g. {@link PacketRecorder#OUTBOUND}).
+         * @param time The time in nanoseconds since the recording started.
+         * @param payload The payload of the frame.
+         * @throws IOException If the frame could not be handled.
+         */
+        void handle(int connection, byte flags, long time, ByteBuf payload) throws IOException;
+    }
+
+    /**
+     * The result of replaying a recording through
+     * the listeners of a {@link ProtocolManager}.
+     */
+    public static final class Result {
+
+        long frames, packets, failed, dropped, nanos;
+
+        Result() {
+        }
+
+        /**
+         * Get the amount of packet frames in the recording.
+         *
+         * @return The amount of frames.
+         */
+        public long getFrames() {
+            return frames;
+        }
+
+        /**
+         * Get the amount of frames that were decoded into
+         * packets and passed to the listeners.
+         *
+         * @return The amount of packets.
+         */
+        public long getPackets() {
+            return packets;
+        }
+
+        /**
+         * Get the amount of frames that could not be decoded.
+         *
+         * @return The amount of failed frames.
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * Get the amount of packets that were dropped by a listener.
+         *
+         * @return The amount of dropped packets.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Get the total time that was spent in the listeners.
+         *
+         * @param unit The {@link TimeUnit} to get the time in.
+         * @return The total time in the given unit.
+         */
+        public long getTime(TimeUnit unit) {
+            return unit.convert(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Get the average time that was spent in the
+         * listeners for each packet.
+         *
+         * @return The average time in nanoseconds.
+         */
+        public long getAverageNanos() {
+            return packets == 0 ? 0 : nanos / packets;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{frames=" + frames + ", packets=" + packets + ", failed=" + failed +
+                    ", dropped=" + dropped + ", avg=" + this.getAverageNanos() + "ns}";
+        }
+    }
+}
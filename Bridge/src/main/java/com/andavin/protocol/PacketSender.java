@@ -28,6 +28,8 @@ import com.andavin.Versioned;
 import com.andavin.reflect.Reflection;
 import org.bukkit.entity.Player;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -66,7 +68,9 @@ public abstract class PacketSender implements Versioned {
 
     /**
      * Send the given packets to the given {@link Player}'s client.
-     * The packets will be sent through the player's connection.
+     * The packets will be sent through the player's connection
+     * and the connection will be flushed once after all of the
+     * packets have been written rather than once per packet.
      * <p>
      * The packet must be a Minecraft packet that extends the NMS
      * {@code Packet}. If a direct instantiation of a packet needs
@@ -82,6 +86,79 @@ public abstract class PacketSender implements Versioned {
         BRIDGE.send(player, packets);
     }
 
+    /**
+     * Queue the given packet to be sent to the given {@link Player}'s
+     * client. The packet will be written to the player's connection
+     * immediately, but the connection will not be flushed until the
+     * end of the current server tick. This way all packets that are
+     * queued for a player during a single tick are flushed together.
+     * <p>
+     * The packet must be a Minecraft packet that extends the NMS
+     * {@code Packet}. If a direct instantiation of a packet needs
+     * to be avoided, the {@link Reflection#newInstance(Class, Object...)}
+     * and {@link Reflection#findMcClass(String)} or similar methods
+     * can be used to create an instance.
+     *
+     * @param player The player to send the packet to.
+     * @param packet The packet to queue.
+     * @see #queuePackets(Player, List)
+     */
+    public static void queuePacket(Player player, Object packet) {
+        BRIDGE.queue(player, Collections.singletonList(packet));
+    }
+
+    /**
+     * Queue the given packets to be sent to the given {@link Player}'s
+     * client. The packets will be written to the player's connection
+     * immediately, but the connection will not be flushed until the
+     * end of the current server tick. This way all packets that are
+     * queued for a player during a single tick are flushed together.
+     * <p>
+     * The packet must be a Minecraft packet that extends the NMS
+     * {@code Packet}. If a direct instantiation of a packet needs
+     * to be avoided, the {@link Reflection#newInstance(Class, Object...)}
+     * and {@link Reflection#findMcClass(String)} or similar methods
+     * can be used to create an instance.
+     *
+     * @param player The player to send the packets to.
+     * @param packets The list of packets to queue.
+     * @see #queuePacket(Player, Object)
+     */
+    public static void queuePackets(Player player, List<Object> packets) {
+        BRIDGE.queue(player, packets);
+    }
+
+    /**
+     * Send the given packet to every {@link Player} in the
+     * given collection.
+     * <p>
+     * Rather than serializing the packet once for every player
+     * that it is sent to, the packet is serialized a single time
+     * and the same buffer is written to each player's connection.
+     * Compression is still applied for each connection individually.
+     * <p>
+     * If anything is {@link ProtocolManager#register(Class, PacketListener)
+     * listening} for the packet, it will instead be sent to each player
+     * through the regular procedure, since listeners may modify or cancel
+     * it for each player individually. The same applies to any connection
+     * that has a custom handler after the {@code encoder}. In either case,
+     * the packet is still sent after every packet that was sent to the
+     * player before it.
+     * <p>
+     * The packet must be a Minecraft packet that extends the NMS
+     * {@code Packet}. If a direct instantiation of a packet needs
+     * to be avoided, the {@link Reflection#newInstance(Class, Object...)}
+     * and {@link Reflection#findMcClass(String)} or similar methods
+     * can be used to create an instance.
+     *
+     * @param players The players to send the packet to.
+     * @param packet The packet to send.
+     * @see Reflection
+     */
+    public static void broadcast(Collection<? extends Player> players, Object packet) {
+        BRIDGE.sendAll(players, packet);
+    }
+
     /**
      * Send the given packet to the given {@link Player}'s client.
      * The packet will be sent through the player's connection.
@@ -113,4 +190,24 @@ public abstract class PacketSender implements Versioned {
      * @see Reflection
      */
     protected abstract void send(Player player, List<Object> packets);
+
+    /**
+     * Queue the given packets to be sent to the given {@link Player}'s
+     * client. The packets will be written to the player's connection,
+     * but the connection will not be flushed until the end of the
+     * current server tick.
+     *
+     * @param player The player to send the packets to.
+     * @param packets The list of packets to queue.
+     */
+    protected abstract void queue(Player player, List<Object> packets);
+
+    /**
+     * Send the given packet to every {@link Player} in the
+     * given collection serializing the packet only once.
+     *
+     * @param players The players to send the packet to.
+     * @param packet The packet to send.
+     */
+    protected abstract void sendAll(Collection<? extends Player> players, Object packet);
 }
@@ -26,19 +26,72 @@ package com.andavin.protocol;
 
 import com.andavin.Versioned;
 import com.andavin.util.Logger;
+import com.andavin.util.Scheduler;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.embedded.EmbeddedChannel;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * @since December 06, 2018
  * @author Andavin
  */
-public class ProtocolManager implements Versioned {
+public abstract class ProtocolManager implements Versioned {
+
+    private static final int ASYNC_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int ASYNC_QUEUE_CAPACITY = 2048;
+    private static final String RECORDER_IN = "recorder_in", RECORDER_OUT = "recorder_out";
+    private static final String CHUNK_OVERLAY = "chunk_overlay";
+    private static final Set<String> BASE_HANDLERS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            "timeout", "legacy_query", "splitter", "limiter", "decoder", "prepender", "encoder", "packet_handler")));
 
     private final Map<Class<?>, Map<ProtocolPriority, List<PacketListener<?>>>> nettyListeners = new HashMap<>();
     private final Map<Class<?>, Map<ProtocolPriority, List<PacketListener<?>>>> mainThreadListeners = new HashMap<>();
+    private final Map<Class<?>, List<PacketListener<?>>> asyncListeners = new HashMap<>();
+    private final Map<Class<?>, List<ConnectionListener<?>>> connectionListeners = new HashMap<>();
+
+    // The flattened and immutable listener tables that are read by the
+    // network threads. These are only ever replaced, never mutated, so that
+    // reading them does not require any synchronization.
+    private volatile Map<Class<?>, RegisteredListener[]> nettyTable = Collections.emptyMap();
+    private volatile Map<Class<?>, RegisteredListener[]> mainThreadTable = Collections.emptyMap();
+    private volatile Map<Class<?>, RegisteredListener[]> asyncTable = Collections.emptyMap();
+    private volatile Map<Class<?>, ConnectionListener<?>[]> connectionTable = Collections.emptyMap();
+    private volatile Set<Class<?>> listening = Collections.emptySet();
+    private volatile AsyncPacketExecutor asyncExecutor;
+    private final ProtocolMetrics metrics = new ProtocolMetrics();
+
+    // Packets that are waiting to be passed to the main thread listeners
+    // along with the amount that are queued for each player in each direction.
+    // While a player has packets queued in a direction, all of their later
+    // packets in that direction are queued behind them to keep them in order.
+    private final Queue<DeferredPacket> deferred = new ConcurrentLinkedQueue<>();
+    private final Map<UUID, int[]> pending = new ConcurrentHashMap<>();
+    private volatile long mainThreadBudget = TimeUnit.MILLISECONDS.toNanos(5);
+    private BukkitTask drainTask;
+
+    // The rate limit settings that are used to build the rate limiter settings
+    private final Map<Class<?>, int[]> packetRateLimits = new HashMap<>();
+    private int rateLimit, rateBurst, connectionLimit;
+    private long connectionWindow;
+    private boolean floodDisconnect;
+
+    // The custom handlers that are added to the pipeline of every connection
+    private final Map<String, HandlerRegistration> handlers = new LinkedHashMap<>();
+    private final Map<Class<?>, Function<Object, Object>> coalesceKeys = new HashMap<>();
+    private volatile ChunkOverlay[] chunkOverlays = new ChunkOverlay[0];
 
     protected ProtocolManager() { // This class is useless if it's not extended
     }
@@ -69,8 +122,7 @@ public class ProtocolManager implements Versioned {
      * @param <T> The type of packet that is being listened for.
      */
     public <T> void register(Class<T> packetClass, ProtocolPriority priority, PacketListener<T> listener) {
-        this.nettyListeners.computeIfAbsent(packetClass, __ -> new EnumMap<>(ProtocolPriority.class))
-                .computeIfAbsent(priority, __ -> new ArrayList<>(1)).add(listener);
+        this.register(packetClass, false, priority, listener);
     }
 
     /**
@@ -80,18 +132,607 @@ public class ProtocolManager implements Versioned {
      * @param packetClass The class of the {@code Packet} that
      *                    is being listened to.
      * @param mainThread If the packet listener should be called
-     *                   when a packet is handled on the main thread
-     *                   rather than when it comes down the netty pipeline.
+     *                   on the main thread rather than when it comes
+     *                   down the netty pipeline. Packets that are sent or
+     *                   received off of the main thread are queued and
+     *                   passed to these listeners once per tick (within
+     *                   the {@link #setMainThreadBudget(long, TimeUnit) budget})
+     *                   before they continue to be sent or received. Any
+     *                   later packets to or from the same player in the
+     *                   same direction are queued behind them so that the
+     *                   order of the packets is never changed.
      * @param priority The {@link ProtocolPriority} the packet should
      *                 be registered under.
      * @param listener The PacketListener to register.
      * @param <T> The type of packet that is being listened for.
      */
     public <T> void register(Class<T> packetClass, boolean mainThread, ProtocolPriority priority, PacketListener<T> listener) {
-        Map<Class<?>, Map<ProtocolPriority, List<PacketListener<?>>>> listeners =
-                mainThread ? this.mainThreadListeners : this.nettyListeners;
-        listeners.computeIfAbsent(packetClass, __ -> new EnumMap<>(ProtocolPriority.class))
-                .computeIfAbsent(priority, __ -> new ArrayList<>(1)).add(listener);
+
+        synchronized (this.nettyListeners) {
+
+            Map<Class<?>, Map<ProtocolPriority, List<PacketListener<?>>>> listeners =
+                    mainThread ? this.mainThreadListeners : this.nettyListeners;
+            listeners.computeIfAbsent(packetClass, __ -> new EnumMap<>(ProtocolPriority.class))
+                    .computeIfAbsent(priority, __ -> new ArrayList<>(1)).add(listener);
+            if (mainThread && this.drainTask == null) {
+                this.drainTask = Scheduler.repeat(this::drain, 1L, 1L);
+            }
+
+            this.rebuild();
+        }
+    }
+
+    /**
+     * Register the given {@link PacketListener} to observe the
+     * Minecraft packet that is the given packet class asynchronously.
+     * <p>
+     * Asynchronous listeners are called after all of the other
+     * listeners for the packet have been called and only if the packet
+     * was not cancelled by any of them. Rather than being called on the
+     * thread that the packet is sent or received on, the packet is handed
+     * off to an {@link AsyncPacketExecutor} and the listener is called on
+     * one of its threads. All of the packets for a single player will be
+     * passed to the listener in the same order they were sent or received.
+     * <p>
+     * This means that these listeners are observe-only: the value returned
+     * from the listener is ignored and the packet cannot be modified or
+     * cancelled. The packet itself should also not be modified since it
+     * may have already been sent or handled by the time the listener is called.
+     * However, blocking in these listeners will not stall the network
+     * traffic of any player.
+     *
+     * @param packetClass The class of the {@code Packet} that
+     *                    is being listened to.
+     * @param listener The PacketListener to register.
+     * @param <T> The type of packet that is being listened for.
+     * @see #getAsyncExecutor()
+     */
+    public <T> void registerAsync(Class<T> packetClass, PacketListener<T> listener) {
+
+        synchronized (this.nettyListeners) {
+
+            if (this.asyncExecutor == null) {
+                this.asyncExecutor = new AsyncPacketExecutor(ASYNC_THREADS, ASYNC_QUEUE_CAPACITY);
+            }
+
+            this.asyncListeners.computeIfAbsent(packetClass, __ -> new ArrayList<>(1)).add(listener);
+            this.rebuild();
+        }
+    }
+
+    /**
+     * Register the given {@link ConnectionListener} to listen to
+     * the Minecraft packet that is the given packet class before a
+     * player has been created for the connection (i.e. packets in the
+     * {@code Handshaking}, {@code Status} and {@code Login} protocols).
+     * <p>
+     * These listeners are always called on the thread that the packet
+     * is sent or received on and are called in the order they were registered.
+     *
+     * @param packetClass The class of the {@code Packet} that
+     *                    is being listened to.
+     * @param listener The ConnectionListener to register.
+     * @param <T> The type of packet that is being listened for.
+     */
+    public <T> void registerConnection(Class<T> packetClass, ConnectionListener<T> listener) {
+
+        synchronized (this.nettyListeners) {
+            this.connectionListeners.computeIfAbsent(packetClass, __ -> new ArrayList<>(1)).add(listener);
+            this.rebuild();
+        }
+    }
+
+    /**
+     * Unregister the given {@link ConnectionListener} so that it
+     * no longer is called when a packet is received or sent.
+     *
+     * @param listener The ConnectionListener to unregister.
+     */
+    public void unregister(ConnectionListener<?> listener) {
+
+        synchronized (this.nettyListeners) {
+            this.connectionListeners.values().removeIf(listeners -> listeners.remove(listener) && listeners.isEmpty());
+            this.rebuild();
+        }
+    }
+
+    /**
+     * Get the {@link AsyncPacketExecutor} that is used to call
+     * {@link #registerAsync(Class, PacketListener) asynchronous}
+     * listeners. This can be used to observe the queue depth and
+     * latency of the asynchronous listeners.
+     *
+     * @return The executor or {@code null} if no asynchronous
+     *         listener has been registered yet.
+     */
+    public AsyncPacketExecutor getAsyncExecutor() {
+        return this.asyncExecutor;
+    }
+
+    /**
+     * Get the {@link ProtocolMetrics} that are recorded for
+     * every {@link PacketListener} registered with this manager.
+     *
+     * @return The metrics for this manager.
+     */
+    public ProtocolMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Set the maximum amount of time that may be spent each tick
+     * passing queued packets to the main thread listeners. Any packets
+     * that are still queued once the budget has been used up will be
+     * handled on the following tick.
+     * <p>
+     * At least one packet is always handled per tick regardless of
+     * the budget so that the queue is guaranteed to make progress.
+     *
+     * @param budget The amount of time that may be spent per tick.
+     * @param unit The {@link TimeUnit} of the budget.
+     */
+    public void setMainThreadBudget(long budget, TimeUnit unit) {
+        this.mainThreadBudget = unit.toNanos(budget);
+    }
+
+    /**
+     * Set the rate at which packets may be received from a single
+     * connection before they are dropped. This is applied to the raw
+     * packets before they are decoded or passed to any listeners.
+     *
+     * @param packetsPerSecond The amount of packets that may be received
+     *                         per second or {@code 0} for no limit.
+     * @param burst The amount of packets that may be received at once
+     *              before the rate applies.
+     * @see #setFloodDisconnect(boolean)
+     */
+    public void setRateLimit(int packetsPerSecond, int burst) {
+
+        synchronized (this.packetRateLimits) {
+            this.rateLimit = packetsPerSecond;
+            this.rateBurst = burst;
+            this.updateRateLimits();
+        }
+    }
+
+    /**
+     * Set the rate at which packets of the given class may be
+     * received from a single connection before they are dropped.
+     * This is applied to the raw packets before they are decoded
+     * or passed to any listeners.
+     * <p>
+     * The packet must be a packet that is sent to the server in the
+     * {@code Play} protocol (e.g. {@code PacketPlayInFlying}). Note that
+     * packets that are large enough to be compressed can only be limited
+     * by the {@link #setRateLimit(int, int) connection limit}.
+     *
+     * @param packetClass The class of the packet to limit.
+     * @param packetsPerSecond The amount of packets that may be received
+     *                         per second or {@code 0} to remove the limit.
+     * @param burst The amount of packets that may be received at once
+     *              before the rate applies.
+     */
+    public void setRateLimit(Class<?> packetClass, int packetsPerSecond, int burst) {
+
+        synchronized (this.packetRateLimits) {
+
+            if (packetsPerSecond > 0) {
+                this.packetRateLimits.put(packetClass, new int[]{ packetsPerSecond, Math.max(1, burst) });
+            } else {
+                this.packetRateLimits.remove(packetClass);
+            }
+
+            this.updateRateLimits();
+        }
+    }
+
+    /**
+     * Set whether a connection should be closed when a packet
+     * goes over the {@link #setRateLimit(int, int) rate limit}
+     * rather than the packet just being dropped.
+     *
+     * @param disconnect If connections should be closed.
+     */
+    public void setFloodDisconnect(boolean disconnect) {
+
+        synchronized (this.packetRateLimits) {
+            this.floodDisconnect = disconnect;
+            this.updateRateLimits();
+        }
+    }
+
+    /**
+     * Set the amount of connections that may be opened from a
+     * single address within the given window of time. Any connections
+     * beyond that will be closed immediately.
+     * <p>
+     * Note that if the server is behind a proxy, then every connection
+     * will come from the same address and this should not be used.
+     *
+     * @param connections The amount of connections that may be opened
+     *                    within the window or {@code 0} for no limit.
+     * @param window The window of time.
+     * @param unit The {@link TimeUnit} of the window.
+     */
+    public void setConnectionThrottle(int connections, long window, TimeUnit unit) {
+
+        synchronized (this.packetRateLimits) {
+            this.connectionLimit = connections;
+            this.connectionWindow = unit.toMillis(window);
+            this.updateRateLimits();
+        }
+    }
+
+    /**
+     * Coalesce the given packet class using its default key. When
+     * multiple packets with the same key are sent to a player during
+     * a single tick, only the last one is sent at the end of the tick.
+     * <p>
+     * Default keys are available for the following packets:
+     * <ul>
+     *     <li>{@code PacketPlayOutBlockChange} by the block position. If
+     *     another packet that changes blocks in the same chunk (e.g. a multi
+     *     block change or the chunk itself) is sent before the end of the tick,
+     *     the block changes in that chunk are sent directly before it instead.</li>
+     *     <li>{@code PacketPlayOutChat} for action bar messages only.</li>
+     * </ul>
+     *
+     * @param packetClass The class of the packet to coalesce.
+     * @throws IllegalArgumentException If there is no default key
+     *                                  for the given packet class.
+     * @see #coalesce(Class, Function)
+     */
+    public void coalesce(Class<?> packetClass) throws IllegalArgumentException {
+
+        Function<Object, Object> key = this.getCoalesceKey(packetClass);
+        if (key == null) {
+            throw new IllegalArgumentException("There is no default coalesce key for " + packetClass);
+        }
+
+        this.coalesce(packetClass, key);
+    }
+
+    /**
+     * Coalesce the given packet class using the given key function.
+     * When multiple packets with the same key are sent to a player
+     * during a single tick, only the last one is sent at the end
+     * of the tick (after the other packets sent during that tick).
+     * <p>
+     * Packets are coalesced after they have been passed to any
+     * {@link PacketListener}s and only packets that are sent while
+     * the player is in the {@code Play} protocol are coalesced.
+     * If the key function returns {@code null} for a packet, then
+     * that packet is sent immediately as normal.
+     * <p>
+     * Only packets that always hold the complete state for their key
+     * should be coalesced. For example, {@code PacketPlayOutEntityMetadata}
+     * only holds the values that changed, so earlier packets for the same
+     * entity cannot be dropped unless the key includes those values.
+     *
+     * @param packetClass The class of the packet to coalesce.
+     * @param key The function to get the key of a packet.
+     * @param <T> The type of packet to coalesce.
+     * @see #removeCoalesce(Class)
+     */
+    public <T> void coalesce(Class<T> packetClass, Function<? super T, ?> key) {
+
+        synchronized (this.coalesceKeys) {
+            this.coalesceKeys.put(packetClass, (Function<Object, Object>) key);
+            this.setCoalesceKeys(new IdentityHashMap<>(this.coalesceKeys));
+        }
+    }
+
+    /**
+     * Stop coalescing the given packet class so that every
+     * packet of the class is sent immediately again.
+     *
+     * @param packetClass The class of the packet to stop coalescing.
+     */
+    public void removeCoalesce(Class<?> packetClass) {
+
+        synchronized (this.coalesceKeys) {
+
+            if (this.coalesceKeys.remove(packetClass) != null) {
+                this.setCoalesceKeys(this.coalesceKeys.isEmpty() ? null : new IdentityHashMap<>(this.coalesceKeys));
+            }
+        }
+    }
+
+    /**
+     * Set the amount of time that the response to server list pings
+     * is cached for. While cached, status and legacy ping requests are
+     * answered directly on the network threads without the server
+     * building a new response (or calling the {@code ServerListPingEvent}).
+     * A cached response is also rebuilt as soon as the amount of players
+     * online changes.
+     * <p>
+     * Note that the cache only applies to connections that
+     * are opened after it has been enabled.
+     *
+     * @param ttl The amount of time to cache the response for
+     *            or {@code 0} to disable the cache.
+     * @param unit The {@link TimeUnit} of the time.
+     * @see #getStatusCache()
+     */
+    public void setStatusCache(long ttl, TimeUnit unit) {
+        this.getStatusCache().setTtl(unit.toNanos(ttl));
+    }
+
+    /**
+     * Get the {@link StatusResponseCache} that is used to answer
+     * server list pings. This can be used to {@link StatusResponseCache#invalidate()
+     * invalidate} the cached response when something that is shown in the server
+     * list changes and to observe the hits and misses of the cache.
+     *
+     * @return The status response cache.
+     * @see #setStatusCache(long, TimeUnit)
+     */
+    public abstract StatusResponseCache getStatusCache();
+
+    /**
+     * Add a custom {@link ChannelHandler} to the pipeline of every
+     * connection directly before the handler with the given base name.
+     * The handler will be added to every connection that is currently
+     * open as well as every new connection.
+     * <p>
+     * The pipeline of each connection contains the following handlers
+     * in order: {@code timeout}, {@code legacy_query}, {@code splitter},
+     * {@code limiter}, {@code decoder}, {@code prepender}, {@code encoder}
+     * and {@code packet_handler}. Inbound data passes through them from
+     * first to last and outbound data from last to first. Therefore, an
+     * inbound handler before the {@code decoder} reads raw {@code ByteBuf}s
+     * and one after it reads packets, while an outbound handler after the
+     * {@code encoder} writes packets and one before it writes raw
+     * {@code ByteBuf}s (before the {@code prepender} they are also framed).
+     * <p>
+     * Only the handlers listed above can be used as the base handler.
+     * The {@code decrypt}, {@code encrypt}, {@code decompress} and
+     * {@code compress} handlers are only added by Minecraft once a
+     * player has logged in and are not present when a connection opens.
+     * <p>
+     * Since every connection needs its own instance of a handler
+     * (unless it is {@link ChannelHandler.Sharable sharable}), the
+     * handler is given as a {@link Supplier} that is called once for
+     * each connection.
+     *
+     * @param baseName The name of the handler to add before.
+     * @param name The name of the handler to add.
+     * @param handler The supplier of the handler to add.
+     * @throws IllegalArgumentException If the base name is not one of
+     *                                  the handlers listed above.
+     * @see #addHandlerAfter(String, String, Supplier)
+     */
+    public void addHandlerBefore(String baseName, String name, Supplier<? extends ChannelHandler> handler) {
+        this.addHandler(new HandlerRegistration(baseName, name, true, handler));
+    }
+
+    /**
+     * Add a custom {@link ChannelHandler} to the pipeline of every
+     * connection directly after the handler with the given base name.
+     * The handler will be added to every connection that is currently
+     * open as well as every new connection.
+     *
+     * @param baseName The name of the handler to add after.
+     * @param name The name of the handler to add.
+     * @param handler The supplier of the handler to add.
+     * @throws IllegalArgumentException If the base name is not one of
+     *                                  the handlers that are listed by
+     *                                  {@link #addHandlerBefore(String, String, Supplier)}.
+     * @see #addHandlerBefore(String, String, Supplier)
+     */
+    public void addHandlerAfter(String baseName, String name, Supplier<? extends ChannelHandler> handler) {
+        this.addHandler(new HandlerRegistration(baseName, name, false, handler));
+    }
+
+    /**
+     * Remove the custom {@link ChannelHandler} with the given name
+     * from the pipeline of every connection that is currently open
+     * and stop it from being added to any new connections.
+     *
+     * @param name The name of the handler to remove.
+     */
+    public void removeHandler(String name) {
+
+        synchronized (this.handlers) {
+
+            if (this.handlers.remove(name) != null) {
+                this.updateChannelInitializer();
+                this.forEachChannel(channel -> {
+
+                    ChannelPipeline pipeline = channel.pipeline();
+                    if (pipeline.get(name) != null) {
+                        pipeline.remove(name);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Add a {@link ChunkOverlay} that is called every time a chunk
+     * is sent to a player and whose packets are written directly
+     * after the chunk in the same flush. This allows extra content,
+     * such as fake blocks, to be shown with a chunk without it ever
+     * being seen before the chunk or lost when the chunk is resent.
+     * <p>
+     * While there are any overlays added, a handler named
+     * {@code chunk_overlay} is placed directly after the {@code encoder}
+     * in the pipeline of every connection.
+     *
+     * @param overlay The overlay to add.
+     * @see #removeChunkOverlay(ChunkOverlay)
+     */
+    public void addChunkOverlay(ChunkOverlay overlay) {
+
+        synchronized (this.handlers) {
+
+            ChunkOverlay[] overlays = this.chunkOverlays;
+            ChunkOverlay[] updated = Arrays.copyOf(overlays, overlays.length + 1);
+            updated[overlays.length] = overlay;
+            this.chunkOverlays = updated;
+            if (overlays.length == 0) {
+                ChunkOverlayHandler handler = new ChunkOverlayHandler(this);
+                this.addHandlerAfter("encoder", CHUNK_OVERLAY, () -> handler);
+            }
+        }
+    }
+
+    /**
+     * Remove a {@link ChunkOverlay} that was previously
+     * {@link #addChunkOverlay(ChunkOverlay) added}.
+     *
+     * @param overlay The overlay to remove.
+     */
+    public void removeChunkOverlay(ChunkOverlay overlay) {
+
+        synchronized (this.handlers) {
+
+            ChunkOverlay[] overlays = this.chunkOverlays;
+            ChunkOverlay[] updated = Arrays.stream(overlays).filter(o -> o != overlay).toArray(ChunkOverlay[]::new);
+            if (updated.length != overlays.length) {
+
+                this.chunkOverlays = updated;
+                if (updated.length == 0) {
+                    this.removeHandler(CHUNK_OVERLAY);
+                }
+            }
+        }
+    }
+
+    /**
+     * Start recording the packets that are sent to and received
+     * from the given player with the given {@link PacketRecorder}.
+     * If the player is already being recorded, then the previous
+     * recording is stopped for the player.
+     *
+     * @param player The player to record.
+     * @param recorder The recorder to record the packets with.
+     * @throws IllegalArgumentException If the player is not connected.
+     * @see #stopRecording(Player)
+     */
+    public void startRecording(Player player, PacketRecorder recorder) throws IllegalArgumentException {
+
+        Channel channel = this.getChannel(player);
+        if (channel == null || !channel.isOpen()) {
+            throw new IllegalArgumentException("Player " + player.getName() + " is not connected.");
+        }
+
+        int connection = recorder.addConnection(player.getUniqueId() + " " + player.getName());
+        channel.eventLoop().execute(() -> {
+
+            ChannelPipeline pipeline = channel.pipeline();
+            removeRecorder(pipeline);
+            pipeline.addAfter("limiter", RECORDER_IN, recorder.createInbound(connection));
+            pipeline.addAfter("prepender", RECORDER_OUT, recorder.createOutbound(connection));
+        });
+    }
+
+    /**
+     * Stop recording the packets of the given player if
+     * they are currently being {@link #startRecording(Player, PacketRecorder)
+     * recorded}. Note that this does not close the recorder.
+     *
+     * @param player The player to stop recording.
+     */
+    public void stopRecording(Player player) {
+
+        Channel channel = this.getChannel(player);
+        if (channel != null) {
+            channel.eventLoop().execute(() -> removeRecorder(channel.pipeline()));
+        }
+    }
+
+    /**
+     * Replay a recording through the packet decoder and every
+     * {@link PacketListener} that is called on the network threads
+     * as if the packets were sent to or received from the given player.
+     * <p>
+     * This should <b>not</b> be done while the given player is online
+     * since the listeners cannot tell the replayed packets apart from
+     * the real packets. The metrics of the listeners are recorded as
+     * normal, and the returned result holds the overall time spent
+     * in the listeners.
+     *
+     * @param replay The replay of the recording.
+     * @param player The player to pass to the listeners.
+     * @return The result of the replay.
+     * @throws IOException If the recording could not be read.
+     */
+    public PacketReplay.Result replay(PacketReplay replay, Player player) throws IOException {
+
+        PacketReplay.Result result = new PacketReplay.Result();
+        EmbeddedChannel[] channels = new EmbeddedChannel[4];
+        try {
+            replay.forEachFrame((connection, flags, time, payload) -> {
+
+                if ((flags & PacketRecorder.METADATA) != 0) {
+                    return;
+                }
+
+                result.frames++;
+                boolean outbound = (flags & PacketRecorder.OUTBOUND) != 0;
+                boolean compressed = (flags & PacketRecorder.COMPRESSED) != 0;
+                int index = (outbound ? 2 : 0) | (compressed ? 1 : 0);
+                if (channels[index] == null) {
+                    channels[index] = this.createReplayChannel(outbound, compressed);
+                }
+
+                Object packet;
+                try {
+                    channels[index].writeInbound(payload);
+                    packet = channels[index].readInbound();
+                } catch (RuntimeException e) {
+                    packet = null;
+                }
+
+                if (packet == null) {
+                    result.failed++;
+                    return;
+                }
+
+                result.packets++;
+                long start = System.nanoTime();
+                Object handled = this.callListeners(player, packet, this.nettyTable, this.metrics.sample());
+                result.nanos += System.nanoTime() - start;
+                if (handled == null) {
+                    result.dropped++;
+                }
+            });
+        } finally {
+
+            for (EmbeddedChannel channel : channels) {
+
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Shutdown this manager and any threads that it has
+     * started for calling asynchronous listeners.
+     */
+    public void shutdown() {
+
+        synchronized (this.nettyListeners) {
+
+            if (this.drainTask != null) {
+                this.drainTask.cancel();
+                this.drainTask = null;
+            }
+
+            this.metrics.stopDump();
+
+            if (this.asyncExecutor != null) {
+                this.asyncListeners.clear();
+                this.rebuild();
+                this.asyncExecutor.shutdown();
+                this.asyncExecutor = null;
+            }
+        }
     }
 
     /**
@@ -101,13 +742,18 @@ public class ProtocolManager implements Versioned {
      * @param listener The PacketListener to unregister.
      */
     public void unregister(PacketListener<?> listener) {
-        // Remove the listener
-        // Remove the list of listeners if it contained the listener (remove it) and is now empty
-        // Remove the priority map if it removed a listener list and is now empty
-        this.nettyListeners.values().removeIf(priorities -> priorities.values().removeIf(listeners ->
-                listeners.remove(listener) && listeners.isEmpty()) && priorities.isEmpty());
-        this.mainThreadListeners.values().removeIf(priorities -> priorities.values().removeIf(listeners ->
-                listeners.remove(listener) && listeners.isEmpty()) && priorities.isEmpty());
+
+        synchronized (this.nettyListeners) {
+            // Remove the listener
+            // Remove the list of listeners if it contained the listener (remove it) and is now empty
+            // Remove the priority map if it removed a listener list and is now empty
+            this.nettyListeners.values().removeIf(priorities -> priorities.values().removeIf(listeners ->
+                    listeners.remove(listener) && listeners.isEmpty()) && priorities.isEmpty());
+            this.mainThreadListeners.values().removeIf(priorities -> priorities.values().removeIf(listeners ->
+                    listeners.remove(listener) && listeners.isEmpty()) && priorities.isEmpty());
+            this.asyncListeners.values().removeIf(listeners -> listeners.remove(listener) && listeners.isEmpty());
+            this.rebuild();
+        }
     }
 
     /**
@@ -118,52 +764,603 @@ public class ProtocolManager implements Versioned {
      * not wish the packet to continue, then any PacketListeners
      * beyond that one will not be called and this method will
      * return immediately.
+     * <p>
+     * If this is called off of the main thread and there are main
+     * thread listeners for the packet, then the packet is queued to be
+     * passed to those listeners on the next tick and will then continue
+     * from there. The same is done for any packet to or from a player that
+     * already has packets queued in the same direction, so that the packets
+     * of a connection continue in the order they were sent or received.
+     * In this case, this method returns {@code null} so that the packet
+     * does not continue now.
      *
      * @param player The player the packet was sent to
      *               or received from.
      * @param packet The packet that is being sent or received.
+     * @param inbound If the packet was received from the player
+     *                rather than sent to the player.
      * @return The packet after if has been processed by the
      *         PacketListeners. If this returns {@code null},
      *         then the packet should not continue to be processed
      *         by the server or sent to the client.
      */
-    protected final Object call(Player player, Object packet) {
+    protected final Object call(Player player, Object packet, boolean inbound) {
+
+        boolean primaryThread = Bukkit.isPrimaryThread();
+        if (primaryThread && this.isDeferring(player, inbound)) {
+            // The main thread listeners are called once it is drained
+            this.defer(player, packet, inbound, true);
+            return null;
+        }
+
+        Object result = this.callListeners(player, packet,
+                primaryThread ? this.mainThreadTable : this.nettyTable, this.metrics.sample());
+        if (result != null) {
+
+            // Stop the packet here and continue it once the main thread
+            // listeners have been called or the packets before it continue
+            if (!primaryThread && this.defer(player, result, inbound,
+                    this.mainThreadTable.containsKey(result.getClass()))) {
+                return null;
+            }
+
+            this.observe(player, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Call all of the {@link ConnectionListener}s for the given
+     * packet that is sent to or received from the given connection.
+     * <p>
+     * Note that, if during the processing a ConnectionListener does
+     * not wish the packet to continue, then any ConnectionListeners
+     * beyond that one will not be called and this method will
+     * return immediately.
+     *
+     * @param connection The connection the packet was sent to
+     *                   or received from.
+     * @param packet The packet that is being sent or received.
+     * @return The packet after if has been processed by the
+     *         ConnectionListeners. If this returns {@code null},
+     *         then the packet should not continue to be processed
+     *         by the server or sent to the client.
+     */
+    protected final Object callConnection(Connection connection, Object packet) {
 
         if (packet != null) {
 
             Class<?> clazz = packet.getClass();
-            Map<Class<?>, Map<ProtocolPriority, List<PacketListener<?>>>> listenerMap =
-                    Bukkit.isPrimaryThread() ? this.mainThreadListeners : this.nettyListeners;
-            Map<ProtocolPriority, List<PacketListener<?>>> priorities = listenerMap.get(clazz);
-            if (priorities == null) {
+            ConnectionListener<?>[] listeners = this.connectionTable.get(clazz);
+            if (listeners == null) {
                 return packet;
             }
 
-            for (List<PacketListener<?>> listeners : priorities.values()) { // Iterates in natural order
+            for (ConnectionListener<?> listener : listeners) {
+
+                Object altered;
+                try {
+                    altered = listener.handleMsg(connection, packet);
+                } catch (Throwable e) {
+                    Logger.severe(e, "Exception thrown by connection listener {} for packet {}", listener.getClass(), clazz);
+                    continue;
+                }
 
-                for (PacketListener<?> listener : listeners) {
+                if (altered == null) {
+                    return null;
+                }
+
+                if (clazz != altered.getClass()) {
+                    return this.callConnection(connection, altered);
+                }
 
-                    Object altered;
+                packet = altered;
+            }
+        }
+
+        return packet;
+    }
+
+    /**
+     * Send the given packet to the given player without
+     * passing it to any of the {@link PacketListener}s.
+     *
+     * @param player The player to send the packet to.
+     * @param packet The packet to send.
+     */
+    protected abstract void sendDirect(Player player, Object packet);
+
+    /**
+     * Get the ID of the given packet class in the {@code Play}
+     * protocol for packets that are sent to the server.
+     *
+     * @param packetClass The class of the packet.
+     * @return The ID of the packet or {@code -1} if the class
+     *         is not a packet that is sent to the server.
+     */
+    protected abstract int getPacketId(Class<?> packetClass);
+
+    /**
+     * Set the settings that should be used to limit the rate
+     * of incoming packets and connections.
+     *
+     * @param settings The settings to set to or {@code null}
+     *                 if nothing should be limited.
+     */
+    protected abstract void setRateLimits(PacketRateLimiter.Settings settings);
+
+    /**
+     * Get the default function that gets the key that packets
+     * of the given class are coalesced by.
+     *
+     * @param packetClass The class of the packet.
+     * @return The key function or {@code null} if there is
+     *         no default for the packet class.
+     */
+    protected abstract Function<Object, Object> getCoalesceKey(Class<?> packetClass);
+
+    /**
+     * Set the functions that get the key of each packet class
+     * that should be coalesced.
+     *
+     * @param keys The key functions or {@code null} if no
+     *             packets should be coalesced.
+     */
+    protected abstract void setCoalesceKeys(Map<Class<?>, Function<Object, Object>> keys);
+
+    /**
+     * Get the {@link Channel} of the connection of the given player.
+     *
+     * @param player The player to get the channel for.
+     * @return The channel or {@code null} if the
+     *         player is not connected.
+     */
+    protected abstract Channel getChannel(Player player);
+
+    /**
+     * Get the player that the given {@link Channel} belongs to.
+     *
+     * @param channel The channel to get the player for.
+     * @return The player or {@code null} if the connection
+     *         is not in the {@code Play} protocol yet.
+     */
+    protected abstract Player getPlayer(Channel channel);
+
+    /**
+     * Get the hashed {@link com.andavin.util.LongHash coordinates}
+     * of the chunks that are contained within the given packet if
+     * it is a map chunk packet.
+     *
+     * @param packet The packet to get the chunks of.
+     * @return The chunk coordinates or {@code null} if the
+     *         packet is not a map chunk packet.
+     */
+    protected abstract long[] getChunks(Object packet);
+
+    /**
+     * Get the {@link ChunkOverlay}s that are currently added.
+     *
+     * @return The chunk overlays.
+     */
+    ChunkOverlay[] getChunkOverlays() {
+        return this.chunkOverlays;
+    }
+
+    /**
+     * Create a new {@link EmbeddedChannel} that decodes the frames
+     * that were recorded by a {@link PacketRecorder} into packets
+     * in the {@code Play} protocol.
+     *
+     * @param outbound If the frames were sent to the client.
+     * @param compressed If the frames are compressed.
+     * @return The new channel.
+     */
+    protected abstract EmbeddedChannel createReplayChannel(boolean outbound, boolean compressed);
+
+    /**
+     * Set the initializer that is applied to the {@link Channel}
+     * of every new connection once its pipeline has been set up.
+     *
+     * @param initializer The initializer to set to.
+     */
+    protected abstract void setChannelInitializer(Consumer<Channel> initializer);
+
+    /**
+     * Execute the given action for the {@link Channel} of every
+     * connection that is currently open.
+     *
+     * @param action The action to execute.
+     */
+    protected abstract void forEachChannel(Consumer<Channel> action);
+
+    private void addHandler(HandlerRegistration registration) {
+
+        if (!BASE_HANDLERS.contains(registration.baseName)) {
+            throw new IllegalArgumentException("Cannot add a handler relative to " + registration.baseName +
+                    " since it is not present in every pipeline (" + String.join(", ", BASE_HANDLERS) + ").");
+        }
+
+        synchronized (this.handlers) {
+
+            if (this.handlers.putIfAbsent(registration.name, registration) != null) {
+                throw new IllegalArgumentException("A handler named " + registration.name + " is already registered.");
+            }
+
+            this.updateChannelInitializer();
+            this.forEachChannel(registration::apply);
+        }
+    }
+
+    private void updateChannelInitializer() {
+
+        if (this.handlers.isEmpty()) {
+            this.setChannelInitializer(null);
+            return;
+        }
+
+        HandlerRegistration[] registrations = this.handlers.values().toArray(new HandlerRegistration[0]);
+        this.setChannelInitializer(channel -> {
+
+            for (HandlerRegistration registration : registrations) {
+                registration.apply(channel);
+            }
+        });
+    }
+
+    private static void removeRecorder(ChannelPipeline pipeline) {
+
+        if (pipeline.get(RECORDER_IN) != null) {
+            pipeline.remove(RECORDER_IN);
+        }
+
+        if (pipeline.get(RECORDER_OUT) != null) {
+            pipeline.remove(RECORDER_OUT);
+        }
+    }
+
+    private void updateRateLimits() {
+
+        if (this.rateLimit <= 0 && this.connectionLimit <= 0 && this.packetRateLimits.isEmpty()) {
+            this.setRateLimits(null);
+            return;
+        }
+
+        int length = 0;
+        Map<Integer, int[]> limits = new HashMap<>();
+        for (Map.Entry<Class<?>, int[]> entry : this.packetRateLimits.entrySet()) {
+
+            int id = this.getPacketId(entry.getKey());
+            if (id < 0) {
+                Logger.warn("{} is not a serverbound Play packet and cannot be rate limited.", entry.getKey());
+                continue;
+            }
+
+            limits.put(id, entry.getValue());
+            length = Math.max(length, id + 1);
+        }
+
+        int[] rates = new int[length], bursts = new int[length];
+        limits.forEach((id, limit) -> {
+            rates[id] = limit[0];
+            bursts[id] = limit[1];
+        });
+
+        this.setRateLimits(new PacketRateLimiter.Settings(this.rateLimit, this.rateBurst, rates, bursts,
+                this.floodDisconnect, this.connectionLimit, this.connectionWindow));
+    }
+
+    private Object callListeners(Player player, Object packet, Map<Class<?>, RegisteredListener[]> table, boolean sample) {
+
+        if (packet != null) {
+
+            Class<?> clazz = packet.getClass();
+            RegisteredListener[] listeners = table.get(clazz);
+            if (listeners == null) {
+                return packet;
+            }
+
+            for (RegisteredListener registered : listeners) { // Already in natural priority order
+
+                Object altered;
+                long start = sample ? System.nanoTime() : 0;
+                try {
+                    altered = registered.listener.handleMsg(player, packet);
+                } catch (Throwable e) {
+                    registered.exceptions.increment();
+                    Logger.severe(e, "Exception thrown by packet listener {} for packet {}",
+                            registered.listener.getClass(), clazz);
+                    continue;
+                } finally {
+                    registered.record(sample ? System.nanoTime() - start : -1);
+                }
+
+                if (altered == null) {
+                    registered.drops.increment();
+                    return null;
+                }
+
+                if (clazz != altered.getClass()) {
+                    return this.callListeners(player, altered, table, sample);
+                }
+
+                packet = altered;
+            }
+        }
+
+        return packet;
+    }
+
+    private void observe(Player player, Object packet) {
+
+        RegisteredListener[] listeners = this.asyncTable.get(packet.getClass());
+        if (listeners == null) {
+            return;
+        }
+
+        AsyncPacketExecutor executor = this.asyncExecutor;
+        if (executor == null) { // Shutdown after the table was read
+            return;
+        }
+
+        boolean sample = this.metrics.sample();
+        executor.execute(player.getUniqueId(), () -> {
+
+            for (RegisteredListener registered : listeners) {
+
+                long start = sample ? System.nanoTime() : 0;
+                try {
+                    registered.listener.handleMsg(player, packet);
+                } catch (Throwable e) {
+                    registered.exceptions.increment();
+                    Logger.severe(e, "Exception thrown by async packet listener {} for packet {}",
+                            registered.listener.getClass(), packet.getClass());
+                } finally {
+                    registered.record(sample ? System.nanoTime() - start : -1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Pass the packets that have been queued since the last tick
+     * to the main thread listeners and then continue sending or
+     * receiving them, stopping once the time budget is used up.
+     */
+    private void drain() {
+
+        long deadline = System.nanoTime() + this.mainThreadBudget;
+        DeferredPacket deferred;
+        while ((deferred = this.deferred.poll()) != null) {
+
+            Player player = deferred.player;
+            if (player.isOnline()) {
+
+                Object packet = this.callListeners(player, deferred.packet, this.mainThreadTable, this.metrics.sample());
+                if (packet != null) {
+
+                    this.observe(player, packet);
                     try {
-                        altered = listener.handleMsg(player, packet);
+
+                        if (deferred.inbound) {
+                            PacketReceiver.receivePacket(player, packet);
+                        } else {
+                            this.sendDirect(player, packet);
+                        }
                     } catch (Throwable e) {
-                        Logger.severe(e, "Exception thrown by packet listener {} for packet {}", listener.getClass(), clazz);
-                        continue;
+                        Logger.severe(e, "Exception thrown while handling deferred packet {}", packet.getClass());
                     }
+                }
+            }
 
-                    if (altered == null) {
-                        return null;
-                    }
+            // Only release the packets behind this one once it has continued
+            int index = deferred.inbound ? 0 : 1;
+            this.pending.computeIfPresent(player.getUniqueId(), (id, counts) ->
+                    --counts[index] == 0 && counts[1 - index] == 0 ? null : counts);
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+    }
 
-                    if (clazz != altered.getClass()) {
-                        return this.call(player, altered);
-                    }
+    /**
+     * Queue the given packet to be passed to the main thread listeners
+     * and then continue if it is required to be or if the player already
+     * has packets queued in the same direction.
+     *
+     * @param player The player the packet was sent to or received from.
+     * @param packet The packet to queue.
+     * @param inbound If the packet was received from the player.
+     * @param required If the packet must be queued regardless
+     *                 of the packets that are already queued.
+     * @return If the packet was queued.
+     */
+    private boolean defer(Player player, Object packet, boolean inbound, boolean required) {
+
+        int index = inbound ? 0 : 1;
+        boolean[] queued = new boolean[1];
+        // Counted and queued atomically with the release in drain so that
+        // no packet is able to slip past the ones queued before it
+        this.pending.compute(player.getUniqueId(), (id, counts) -> {
+
+            if (counts == null) {
+
+                if (!required) {
+                    return null;
+                }
 
-                    packet = altered;
+                counts = new int[2];
+            } else if (!required && counts[index] == 0) {
+                return counts;
+            }
+
+            counts[index]++;
+            queued[0] = true;
+            this.deferred.add(new DeferredPacket(player, packet, inbound));
+            return counts;
+        });
+
+        return queued[0];
+    }
+
+    /**
+     * Tell if the given player currently has any packets
+     * queued for the main thread in the given direction.
+     *
+     * @param player The player to check.
+     * @param inbound If the direction is the packets received from the player.
+     * @return If any packets are queued for the player.
+     */
+    private boolean isDeferring(Player player, boolean inbound) {
+        int[] counts = this.pending.isEmpty() ? null : this.pending.get(player.getUniqueId());
+        return counts != null && counts[inbound ? 0 : 1] != 0;
+    }
+
+    /**
+     * Tell if there is any {@link PacketListener} currently registered
+     * for the given packet class, regardless of thread or priority.
+     * <p>
+     * This is intended to be checked by the network layer before any
+     * other work is done for a packet so that packets that no one is
+     * listening to can pass through without resolving the player or
+     * calling into this manager at all.
+     * <p>
+     * While a player has any packets queued for the main thread listeners,
+     * every packet class is reported as listened to for that player so that
+     * the packets of the player can be kept in order behind them.
+     *
+     * @param player The UUID of the player that the packet is sent to or
+     *               received from or {@code null} if it is not known.
+     * @param packetClass The class of the packet to check.
+     * @return If the packet class is being listened to.
+     */
+    protected final boolean isListening(UUID player, Class<?> packetClass) {
+        return this.listening.contains(packetClass) ||
+                player != null && !this.pending.isEmpty() && this.pending.containsKey(player);
+    }
+
+    /**
+     * Rebuild the listener tables from the current registrations
+     * and publish them to be read by {@link #call(Player, Object, boolean)}.
+     * <p>
+     * This must only be called while holding the registration lock.
+     */
+    private void rebuild() {
+
+        Set<Class<?>> listening = Collections.newSetFromMap(new IdentityHashMap<>());
+        listening.addAll(this.nettyListeners.keySet());
+        listening.addAll(this.mainThreadListeners.keySet());
+        listening.addAll(this.asyncListeners.keySet());
+        listening.addAll(this.connectionListeners.keySet());
+        Map<Class<?>, ConnectionListener<?>[]> connectionTable = new IdentityHashMap<>(this.connectionListeners.size());
+        this.connectionListeners.forEach((clazz, listeners) ->
+                connectionTable.put(clazz, listeners.toArray(new ConnectionListener<?>[0])));
+        Map<Class<?>, RegisteredListener[]> asyncTable = new IdentityHashMap<>(this.asyncListeners.size());
+        this.asyncListeners.forEach((clazz, listeners) -> asyncTable.put(clazz,
+                register("async", clazz, listeners, this.asyncTable.get(clazz))));
+        Map<Class<?>, RegisteredListener[]> nettyTable = flatten("netty", this.nettyListeners, this.nettyTable);
+        Map<Class<?>, RegisteredListener[]> mainThreadTable = flatten("main", this.mainThreadListeners, this.mainThreadTable);
+        List<RegisteredListener> registered = new ArrayList<>();
+        nettyTable.values().forEach(listeners -> Collections.addAll(registered, listeners));
+        mainThreadTable.values().forEach(listeners -> Collections.addAll(registered, listeners));
+        asyncTable.values().forEach(listeners -> Collections.addAll(registered, listeners));
+        this.nettyTable = nettyTable;
+        this.mainThreadTable = mainThreadTable;
+        this.asyncTable = asyncTable;
+        this.connectionTable = connectionTable;
+        this.listening = listening;
+        this.metrics.update(registered);
+    }
+
+    private static Map<Class<?>, RegisteredListener[]> flatten(String stage,
+            Map<Class<?>, Map<ProtocolPriority, List<PacketListener<?>>>> listeners,
+            Map<Class<?>, RegisteredListener[]> previous) {
+
+        if (listeners.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<Class<?>, RegisteredListener[]> table = new IdentityHashMap<>(listeners.size());
+        listeners.forEach((clazz, priorities) -> {
+
+            List<PacketListener<?>> flattened = new ArrayList<>();
+            priorities.values().forEach(flattened::addAll); // Iterates in natural order
+            table.put(clazz, register(stage, clazz, flattened, previous.get(clazz)));
+        });
+
+        return table;
+    }
+
+    private static RegisteredListener[] register(String stage, Class<?> clazz,
+                                                 List<PacketListener<?>> listeners, RegisteredListener[] previous) {
+
+        RegisteredListener[] registered = new RegisteredListener[listeners.size()];
+        for (int i = 0; i < registered.length; i++) {
+
+            PacketListener<?> listener = listeners.get(i);
+            // Keep the previous registration (and its metrics) if there is one
+            if (previous != null) {
+
+                for (RegisteredListener prev : previous) {
+
+                    if (prev.listener == listener) {
+                        registered[i] = prev;
+                        break;
+                    }
                 }
             }
+
+            if (registered[i] == null) {
+                registered[i] = new RegisteredListener(stage, clazz, listener);
+            }
         }
 
-        return packet;
+        return registered;
+    }
+
+    private static final class DeferredPacket {
+
+        private final Player player;
+        private final Object packet;
+        private final boolean inbound;
+
+        DeferredPacket(Player player, Object packet, boolean inbound) {
+            this.player = player;
+            this.packet = packet;
+            this.inbound = inbound;
+        }
+    }
+
+    private static final class HandlerRegistration {
+
+        private final String baseName, name;
+        private final boolean before;
+        private final Supplier<? extends ChannelHandler> handler;
+
+        HandlerRegistration(String baseName, String name, boolean before, Supplier<? extends ChannelHandler> handler) {
+            this.baseName = baseName;
+            this.name = name;
+            this.before = before;
+            this.handler = handler;
+        }
+
+        private void apply(Channel channel) {
+
+            ChannelPipeline pipeline = channel.pipeline();
+            if (pipeline.get(this.name) != null || pipeline.get(this.baseName) == null) {
+                return;
+            }
+
+            try {
+
+                if (this.before) {
+                    pipeline.addBefore(this.baseName, this.name, this.handler.get());
+                } else {
+                    pipeline.addAfter(this.baseName, this.name, this.handler.get());
+                }
+            } catch (Throwable e) {
+                Logger.severe(e, "Failed to add handler {} to the pipeline of {}", this.name, channel);
+            }
+        }
     }
 }
@@ -0,0 +1,296 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.protocol;
+
+import com.andavin.util.Logger;
+import com.andavin.util.Scheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The metrics that are recorded for every {@link PacketListener}
+ * that is registered with the {@link ProtocolManager}.
+ * <p>
+ * For every listener and packet class that it is registered for
+ * the amount of times it is called, the amount of times it dropped
+ * the packet and the amount of exceptions it threw are counted.
+ * <p>
+ * Since timing every single call is not free, the time spent in
+ * listeners is only measured for a sample of packets. With a sample
+ * rate of {@code N} roughly 1 in every {@code N} packets is timed and
+ * the total time is estimated from those samples.
+ *
+ * @since July 16, 2019
+ * @author Andavin
+ */
+public final class ProtocolMetrics {
+
+    private volatile int sampleRate = 16;
+    private volatile List<RegisteredListener> listeners = Collections.emptyList();
+    private BukkitTask dumpTask;
+
+    ProtocolMetrics() {
+    }
+
+    /**
+     * Get the rate at which packets are sampled in order to
+     * time the listeners they are passed to.
+     *
+     * @return The sample rate.
+     * @see #setSampleRate(int)
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Set the rate at which packets are sampled in order to
+     * time the listeners they are passed to. Roughly 1 in every
+     * {@code sampleRate} packets will be timed.
+     * <p>
+     * A sample rate of {@code 1} will time every packet and
+     * a sample rate of {@code 0} will disable timing completely.
+     * Counts are always recorded regardless of the sample rate.
+     *
+     * @param sampleRate The sample rate to set to.
+     */
+    public void setSampleRate(int sampleRate) {
+        checkArgument(sampleRate >= 0, "sample rate cannot be negative: %s", sampleRate);
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Take a snapshot of the current metrics for every listener
+     * that is currently registered. The snapshots are sorted by the
+     * estimated total time spent in each listener with the most
+     * expensive first.
+     *
+     * @return The snapshots of the metrics.
+     */
+    public List<ListenerSnapshot> snapshot() {
+
+        List<RegisteredListener> listeners = this.listeners;
+        List<ListenerSnapshot> snapshots = new ArrayList<>(listeners.size());
+        for (RegisteredListener listener : listeners) {
+            snapshots.add(new ListenerSnapshot(listener));
+        }
+
+        snapshots.sort(Comparator.comparingLong(ListenerSnapshot::getTotalNanos).reversed());
+        return snapshots;
+    }
+
+    /**
+     * Log the current metrics of the most expensive listeners
+     * via the {@link Logger}.
+     *
+     * @param limit The maximum amount of listeners to log.
+     */
+    public void dump(int limit) {
+
+        List<ListenerSnapshot> snapshots = this.snapshot();
+        Logger.info("Packet listener metrics (sample rate 1/{}):", this.sampleRate);
+        for (int i = 0; i < snapshots.size() && i < limit; i++) {
+            ListenerSnapshot snapshot = snapshots.get(i);
+            Logger.info("  [{}] {} -> {}: calls={} total={}ms avg={}us max={}us drops={} exceptions={}",
+                    snapshot.stage, snapshot.packetClass.getSimpleName(), snapshot.listenerClass.getName(),
+                    snapshot.invocations, TimeUnit.NANOSECONDS.toMillis(snapshot.getTotalNanos()),
+                    TimeUnit.NANOSECONDS.toMicros(snapshot.getAverageNanos()),
+                    TimeUnit.NANOSECONDS.toMicros(snapshot.maxNanos), snapshot.drops, snapshot.exceptions);
+        }
+    }
+
+    /**
+     * Start periodically {@link #dump(int) dumping} the metrics.
+     * If the metrics are already being dumped, then the previous
+     * task will be stopped and replaced.
+     *
+     * @param period The period in ticks between each dump.
+     * @param limit The maximum amount of listeners to log each dump.
+     */
+    public synchronized void startDump(long period, int limit) {
+        this.stopDump();
+        this.dumpTask = Scheduler.repeatAsync(() -> this.dump(limit), period, period);
+    }
+
+    /**
+     * Stop periodically dumping the metrics if it was
+     * {@link #startDump(long, int) started}.
+     */
+    public synchronized void stopDump() {
+
+        if (this.dumpTask != null) {
+            this.dumpTask.cancel();
+            this.dumpTask = null;
+        }
+    }
+
+    /**
+     * Tell if the current packet should be sampled.
+     *
+     * @return If the current packet should be timed.
+     */
+    boolean sample() {
+        int rate = this.sampleRate;
+        return rate == 1 || rate > 1 && ThreadLocalRandom.current().nextInt(rate) == 0;
+    }
+
+    /**
+     * Update the listeners that are currently registered.
+     *
+     * @param listeners The registered listeners.
+     */
+    void update(List<RegisteredListener> listeners) {
+        this.listeners = Collections.unmodifiableList(listeners);
+    }
+
+    /**
+     * An immutable snapshot of the metrics for a single
+     * {@link PacketListener} and packet class.
+     */
+    public static final class ListenerSnapshot {
+
+        private final String stage;
+        private final Class<?> packetClass, listenerClass;
+        private final long invocations, sampled, sampledNanos, maxNanos, drops, exceptions;
+
+        private ListenerSnapshot(RegisteredListener listener) {
+            this.stage = listener.stage;
+            this.packetClass = listener.packetClass;
+            this.listenerClass = listener.listener.getClass();
+            this.invocations = listener.invocations.sum();
+            this.sampled = listener.sampled.sum();
+            this.sampledNanos = listener.sampledNanos.sum();
+            this.maxNanos = listener.maxNanos.get();
+            this.drops = listener.drops.sum();
+            this.exceptions = listener.exceptions.sum();
+        }
+
+        /**
+         * Get the stage that the listener is registered
+         * under ({@code netty}, {@code main} or {@code async}).
+         *
+         * @return The stage of the listener.
+         */
+        public String getStage() {
+            return stage;
+        }
+
+        /**
+         * Get the class of the packet that the
+         * listener is registered for.
+         *
+         * @return The packet class.
+         */
+        public Class<?> getPacketClass() {
+            return packetClass;
+        }
+
+        /**
+         * Get the class of the {@link PacketListener}.
+         *
+         * @return The listener class.
+         */
+        public Class<?> getListenerClass() {
+            return listenerClass;
+        }
+
+        /**
+         * Get the amount of times the listener was called.
+         *
+         * @return The amount of invocations.
+         */
+        public long getInvocations() {
+            return invocations;
+        }
+
+        /**
+         * Get the amount of times the listener was called
+         * and the call was timed.
+         *
+         * @return The amount of sampled invocations.
+         */
+        public long getSampled() {
+            return sampled;
+        }
+
+        /**
+         * Get the estimated total time in nanoseconds that
+         * has been spent in the listener.
+         *
+         * @return The estimated total time.
+         */
+        public long getTotalNanos() {
+            return this.getAverageNanos() * invocations;
+        }
+
+        /**
+         * Get the average time in nanoseconds that the listener
+         * took for each of the sampled calls.
+         *
+         * @return The average time.
+         */
+        public long getAverageNanos() {
+            return sampled == 0 ? 0 : sampledNanos / sampled;
+        }
+
+        /**
+         * Get the longest time in nanoseconds that any of
+         * the sampled calls to the listener took.
+         *
+         * @return The maximum time.
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Get the amount of times that the listener dropped
+         * the packet by returning {@code null}.
+         *
+         * @return The amount of dropped packets.
+         */
+        public long getDrops() {
+            return drops;
+        }
+
+        /**
+         * Get the amount of times that the listener
+         * threw an exception.
+         *
+         * @return The amount of exceptions.
+         */
+        public long getExceptions() {
+            return exceptions;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.protocol;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link PacketListener} that is registered for a specific
+ * packet class along with the metrics that are recorded every
+ * time it is called for that packet class.
+ *
+ * @since July 16, 2019
+ * @author Andavin
+ */
+final class RegisteredListener {
+
+    final String stage;
+    final Class<?> packetClass;
+    final PacketListener<?> listener;
+    final LongAdder invocations = new LongAdder();
+    final LongAdder sampled = new LongAdder();
+    final LongAdder sampledNanos = new LongAdder();
+    final LongAdder drops = new LongAdder();
+    final LongAdder exceptions = new LongAdder();
+    final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    RegisteredListener(String stage, Class<?> packetClass, PacketListener<?> listener) {
+        this.stage = stage;
+        this.packetClass = packetClass;
+        this.listener = listener;
+    }
+
+    /**
+     * Record a single call to the listener.
+     *
+     * @param nanos The time that the call took in nanoseconds
+     *              or {@code -1} if the call was not sampled.
+     */
+    void record(long nanos) {
+
+        this.invocations.increment();
+        if (nanos >= 0) {
+            this.sampled.increment();
+            this.sampledNanos.add(nanos);
+            this.maxNanos.accumulate(nanos);
+        }
+    }
+}
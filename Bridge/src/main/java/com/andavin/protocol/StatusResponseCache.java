@@ -0,0 +1,321 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.protocol;
+
+import com.andavin.inject.InjectorVersion;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import org.bukkit.event.server.ServerListPingEvent;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A cache of the response that is sent to clients that ping the
+ * server from the server list (i.e. the {@code Status} protocol and
+ * the legacy ping from clients before 1.7).
+ * <p>
+ * Normally, every status request builds a new {@code ServerPing},
+ * calls the {@code ServerListPingEvent} and serializes the whole
+ * response including the favicon. While the cache is enabled, the
+ * first response that the server sends is kept in its encoded form
+ * and every following request is answered directly on the network
+ * thread until the response expires or the amount of players online
+ * changes. Since cached responses are sent without the server being
+ * involved, the {@code ServerListPingEvent} is only called when
+ * the response is rebuilt. This is the case for both the status
+ * response and the legacy response, which is built from the result
+ * of its own {@code ServerListPingEvent} just as the server would.
+ * <p>
+ * This class is injected into the server JAR along with the
+ * server connection and therefore may only reference classes that
+ * are available to the server itself.
+ *
+ * @since July 22, 2019
+ * @author Andavin
+ */
+@InjectorVersion("1.1")
+public class StatusResponseCache {
+
+    private static final int LEGACY_PROTOCOL = 127;
+
+    private final AttributeKey<?> protocolKey;
+    private final Object handshakingProtocol, statusProtocol;
+    private final Class<?> requestClass;
+    private final Supplier<String> version;
+    private final IntSupplier players;
+    private final Function<InetAddress, ServerListPingEvent> ping;
+    private final ChannelHandler statusHandler = new StatusHandler();
+    private final ChannelHandler legacyHandler = new LegacyHandler();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private volatile long ttl;
+    private volatile Entry status, legacy;
+
+    /**
+     * Create a new status response cache.
+     *
+     * @param protocolKey The key to the attribute that holds the
+     *                    current protocol of the connection.
+     * @param handshakingProtocol The {@code Handshaking} protocol.
+     * @param statusProtocol The {@code Status} protocol.
+     * @param requestClass The class of the {@code PacketStatusInStart}.
+     * @param version The supplier of the version name of the server.
+     * @param players The supplier of the amount of players online.
+     * @param ping The function that calls the {@link ServerListPingEvent}
+     *             for the address of a legacy ping and returns it.
+     */
+    public StatusResponseCache(AttributeKey<?> protocolKey, Object handshakingProtocol, Object statusProtocol,
+                               Class<?> requestClass, Supplier<String> version, IntSupplier players,
+                               Function<InetAddress, ServerListPingEvent> ping) {
+        this.protocolKey = protocolKey;
+        this.handshakingProtocol = handshakingProtocol;
+        this.statusProtocol = statusProtocol;
+        this.requestClass = requestClass;
+        this.version = version;
+        this.players = players;
+        this.ping = ping;
+    }
+
+    /**
+     * Tell if this cache is enabled.
+     *
+     * @return If responses are being cached.
+     */
+    public boolean isEnabled() {
+        return this.ttl > 0;
+    }
+
+    /**
+     * Set the amount of time that a response is cached for
+     * before it is rebuilt by the server.
+     *
+     * @param ttl The time in nanoseconds to cache a response
+     *            for or {@code 0} to disable the cache.
+     */
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+        this.invalidate();
+    }
+
+    /**
+     * Invalidate the currently cached responses so that
+     * the next request will be answered by the server.
+     */
+    public void invalidate() {
+        this.status = null;
+        this.legacy = null;
+    }
+
+    /**
+     * Get the amount of requests that have been answered
+     * from the cache.
+     *
+     * @return The amount of cache hits.
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Get the amount of requests that could not be answered
+     * from the cache and were answered by the server instead.
+     *
+     * @return The amount of cache misses.
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Get the handler that answers status requests from the cache.
+     * This handler must be placed directly before the {@code encoder}
+     * so that it receives decoded requests and encoded responses.
+     *
+     * @return The status handler.
+     */
+    public ChannelHandler getStatusHandler() {
+        return this.statusHandler;
+    }
+
+    /**
+     * Get the handler that answers legacy ping requests from the cache.
+     * This handler must be placed directly before the {@code legacy_query}.
+     *
+     * @return The legacy handler.
+     */
+    public ChannelHandler getLegacyHandler() {
+        return this.legacyHandler;
+    }
+
+    private boolean isValid(Entry entry) {
+        return entry != null && this.ttl > 0 && System.nanoTime() - entry.expires < 0 &&
+                entry.players == this.players.getAsInt();
+    }
+
+    private Entry createLegacy(SocketAddress address) {
+
+        int online = this.players.getAsInt();
+        ServerListPingEvent event = this.ping.apply(address instanceof InetSocketAddress ?
+                ((InetSocketAddress) address).getAddress() : null);
+        String motd = event.getMotd();
+        int players = event.getNumPlayers(), maxPlayers = event.getMaxPlayers();
+        String response = String.format("\u00a71\u0000%d\u0000%s\u0000%s\u0000%d\u0000%d",
+                LEGACY_PROTOCOL, this.version.get(), motd, players, maxPlayers);
+        String beta = String.format("%s\u00a7%d\u00a7%d", motd, players, maxPlayers);
+        return new Entry(encodeLegacy(response), encodeLegacy(beta), System.nanoTime() + this.ttl, online);
+    }
+
+    private static byte[] encodeLegacy(String response) {
+
+        byte[] chars = response.getBytes(StandardCharsets.UTF_16BE);
+        byte[] bytes = new byte[chars.length + 3];
+        bytes[0] = (byte) 0xFF;
+        bytes[1] = (byte) (response.length() >> 8);
+        bytes[2] = (byte) response.length();
+        System.arraycopy(chars, 0, bytes, 3, chars.length);
+        return bytes;
+    }
+
+    /**
+     * A cached response.
+     */
+    private static final class Entry {
+
+        private final byte[] data, beta;
+        private final long expires;
+        private final int players;
+
+        Entry(byte[] data, byte[] beta, long expires, int players) {
+            this.data = data;
+            this.beta = beta;
+            this.expires = expires;
+            this.players = players;
+        }
+    }
+
+    /**
+     * The handler that answers status requests from the cache
+     * and captures the encoded responses that the server sends.
+     * It removes itself from the pipeline once the connection
+     * has left the {@code Status} protocol.
+     */
+    @ChannelHandler.Sharable
+    private final class StatusHandler extends ChannelDuplexHandler {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+
+            Object protocol = ctx.channel().attr(protocolKey).get();
+            if (protocol != statusProtocol) {
+
+                if (protocol != handshakingProtocol) {
+                    ctx.pipeline().remove(this);
+                }
+
+                ctx.fireChannelRead(msg);
+                return;
+            }
+
+            if (requestClass.isInstance(msg)) {
+
+                Entry entry = status;
+                if (isValid(entry)) {
+                    hits.increment();
+                    ctx.writeAndFlush(Unpooled.wrappedBuffer(entry.data), ctx.voidPromise());
+                    return;
+                }
+
+                misses.increment();
+            }
+
+            ctx.fireChannelRead(msg);
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+
+            // In the Status protocol the response is the only packet with an ID of 0
+            if (ttl > 0 && msg instanceof ByteBuf && ctx.channel().attr(protocolKey).get() == statusProtocol) {
+
+                ByteBuf buf = (ByteBuf) msg;
+                if (buf.isReadable() && buf.getByte(buf.readerIndex()) == 0) {
+                    byte[] data = new byte[buf.readableBytes()];
+                    buf.getBytes(buf.readerIndex(), data);
+                    status = new Entry(data, null, System.nanoTime() + ttl, players.getAsInt());
+                }
+            }
+
+            ctx.write(msg, promise);
+        }
+    }
+
+    /**
+     * The handler that answers legacy ping requests from the cache.
+     * It removes itself from the pipeline after the first read.
+     */
+    @ChannelHandler.Sharable
+    private final class LegacyHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+
+            ctx.pipeline().remove(this);
+            ByteBuf buf = msg instanceof ByteBuf ? (ByteBuf) msg : null;
+            if (ttl <= 0 || buf == null || !buf.isReadable() || buf.getUnsignedByte(buf.readerIndex()) != 0xFE) {
+                ctx.fireChannelRead(msg);
+                return;
+            }
+
+            Entry entry = legacy;
+            if (isValid(entry)) {
+                hits.increment();
+            } else {
+                misses.increment();
+                legacy = entry = createLegacy(ctx.channel().remoteAddress());
+            }
+
+            // Clients before 1.4 only send 0xFE by itself
+            byte[] response = buf.readableBytes() == 1 ? entry.beta : entry.data;
+            ReferenceCountUtil.release(msg);
+            ctx.writeAndFlush(Unpooled.wrappedBuffer(response)).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.tick;
+
+import com.andavin.inject.InjectorVersion;
+import org.bukkit.Bukkit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+
+/**
+ * A profiler for the main server tick that is called from the
+ * tick loop of the {@code MinecraftServer} when it is injected.
+ * The tick loop is only injected if the server is started with
+ * {@code -Dnmsutils.profiler=true}; otherwise no ticks are profiled,
+ * {@link #getLatest()} is always {@code null} and hooks are never called.
+ * <p>
+ * Every tick the time spent in each {@link Phase} is recorded and
+ * once the tick ends a {@link Profile} of it is published to a ring
+ * buffer of the most recent {@link #CAPACITY} ticks. Profiles are only
+ * written by the main thread and can be read from any thread without
+ * locking. {@link Hook}s can be added in order to run at the start and
+ * end of every tick (e.g. to flush anything that was batched during
+ * the tick).
+ * <p>
+ * This class is injected into the server JAR along with the tick
+ * loop and therefore may only reference classes that are available
+ * to the server itself.
+ *
+ * @since August 01, 2019
+ * @author Andavin
+ */
+@InjectorVersion("1.0")
+public final class TickProfiler {
+
+    /**
+     * The amount of recent tick profiles that are kept.
+     */
+    public static final int CAPACITY = 128;
+    private static final int MASK = CAPACITY - 1;
+    private static final Phase[] PHASES = Phase.values();
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final AtomicReferenceArray<Profile> PROFILES = new AtomicReferenceArray<>(CAPACITY);
+    private static final long[] PHASE_NANOS = new long[PHASES.length]; // Main thread only
+    private static volatile Hook[] hooks = new Hook[0];
+    private static long tickStart;
+
+    private TickProfiler() {
+    }
+
+    /**
+     * Add a {@link Hook} that is called at the start
+     * and end of every tick on the main thread.
+     *
+     * @param hook The hook to add.
+     */
+    public static synchronized void addHook(Hook hook) {
+        Hook[] hooks = Arrays.copyOf(TickProfiler.hooks, TickProfiler.hooks.length + 1);
+        hooks[hooks.length - 1] = hook;
+        TickProfiler.hooks = hooks;
+    }
+
+    /**
+     * Remove a {@link Hook} that was previously
+     * {@link #addHook(Hook) added}.
+     *
+     * @param hook The hook to remove.
+     */
+    public static synchronized void removeHook(Hook hook) {
+        hooks = Arrays.stream(hooks).filter(h -> h != hook).toArray(Hook[]::new);
+    }
+
+    /**
+     * Get the profile of the last tick that has ended.
+     *
+     * @return The latest profile or {@code null} if no
+     *         ticks have been profiled yet.
+     */
+    public static Profile getLatest() {
+        long sequence = SEQUENCE.get();
+        return sequence == 0 ? null : PROFILES.get((int) (sequence - 1) & MASK);
+    }
+
+    /**
+     * Get the profiles of the most recent ticks with the
+     * latest tick first.
+     *
+     * @param count The maximum amount of profiles to get.
+     *              No more than {@link #CAPACITY} are kept.
+     * @return The recent profiles.
+     */
+    public static List<Profile> getRecent(int count) {
+
+        long sequence = SEQUENCE.get();
+        int size = (int) Math.min(Math.min(count, CAPACITY), sequence);
+        List<Profile> profiles = new ArrayList<>(size);
+        for (long tick = sequence - 1; tick >= sequence - size; tick--) {
+
+            Profile profile = PROFILES.get((int) tick & MASK);
+            if (profile == null || profile.tick != tick) {
+                break; // Overwritten by a newer tick while reading
+            }
+
+            profiles.add(profile);
+        }
+
+        return profiles;
+    }
+
+    /**
+     * Mark the start of a new tick.
+     */
+    public static void startTick() {
+
+        Arrays.fill(PHASE_NANOS, 0);
+        tickStart = System.nanoTime();
+        long tick = SEQUENCE.get();
+        for (Hook hook : hooks) {
+
+            try {
+                hook.onTickStart(tick);
+            } catch (Throwable e) {
+                Bukkit.getLogger().log(Level.SEVERE, "Tick hook " + hook.getClass().getName() + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * Mark the end of the current tick and publish its profile.
+     */
+    public static void endTick() {
+
+        long sequence = SEQUENCE.get();
+        Profile profile = new Profile(sequence, tickStart, System.nanoTime() - tickStart, PHASE_NANOS.clone());
+        PROFILES.set((int) sequence & MASK, profile);
+        SEQUENCE.set(sequence + 1);
+        for (Hook hook : hooks) {
+
+            try {
+                hook.onTickEnd(profile);
+            } catch (Throwable e) {
+                Bukkit.getLogger().log(Level.SEVERE, "Tick hook " + hook.getClass().getName() + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * Mark the start of a phase within the current tick.
+     *
+     * @return The time that the phase started at to be given
+     *         to {@link #endPhase(Phase, long)}.
+     */
+    public static long startPhase() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Mark the end of a phase within the current tick. A phase
+     * may happen multiple times within a single tick (e.g. once
+     * per world) and the times are added together.
+     *
+     * @param phase The phase that ended.
+     * @param start The time returned by {@link #startPhase()}.
+     */
+    public static void endPhase(Phase phase, long start) {
+        PHASE_NANOS[phase.ordinal()] += System.nanoTime() - start;
+    }
+
+    /**
+     * The parts of a tick that are timed individually.
+     */
+    public enum Phase {
+
+        /**
+         * Ticking the entities and tile entities of every world.
+         * On 1.14 this is part of the {@link #WORLD} phase.
+         */
+        ENTITY,
+
+        /**
+         * Ticking every world (e.g. weather, chunks and blocks).
+         */
+        WORLD,
+
+        /**
+         * Handling the packets of every connection and
+         * flushing anything that has been sent.
+         */
+        NETWORK,
+
+        /**
+         * Running the tasks of the Bukkit scheduler.
+         */
+        SCHEDULER
+    }
+
+    /**
+     * An immutable profile of a single tick.
+     */
+    public static final class Profile {
+
+        private final long tick, start, duration;
+        private final long[] phases;
+
+        private Profile(long tick, long start, long duration, long[] phases) {
+            this.tick = tick;
+            this.start = start;
+            this.duration = duration;
+            this.phases = phases;
+        }
+
+        /**
+         * Get the number of the tick counting from the
+         * first tick that was profiled.
+         *
+         * @return The tick number.
+         */
+        public long getTick() {
+            return tick;
+        }
+
+        /**
+         * Get the time that the tick started at as given
+         * by {@link System#nanoTime()}.
+         *
+         * @return The start time of the tick.
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Get the time in nanoseconds that the tick took.
+         *
+         * @return The duration of the tick.
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * Get the time in nanoseconds that was spent
+         * in the given phase during the tick.
+         *
+         * @param phase The phase to get the time of.
+         * @return The time spent in the phase.
+         */
+        public long getNanos(Phase phase) {
+            return phases[phase.ordinal()];
+        }
+
+        /**
+         * Get the time in nanoseconds that was spent in the
+         * tick outside of every {@link Phase}.
+         *
+         * @return The time spent outside of the phases.
+         */
+        public long getOtherNanos() {
+
+            long other = duration;
+            for (long nanos : phases) {
+                other -= nanos;
+            }
+
+            return other;
+        }
+    }
+
+    /**
+     * A hook that is called on the main thread at
+     * the start and end of every tick.
+     */
+    public interface Hook {
+
+        /**
+         * Called at the start of every tick.
+         *
+         * @param tick The number of the tick that is starting.
+         */
+        default void onTickStart(long tick) {
+        }
+
+        /**
+         * Called at the end of every tick after its
+         * profile has been published.
+         *
+         * @param profile The profile of the tick that ended.
+         */
+        default void onTickEnd(Profile profile) {
+        }
+    }
+}
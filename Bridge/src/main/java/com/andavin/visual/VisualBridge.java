@@ -33,6 +33,8 @@ import org.bukkit.entity.Player;
 
 import java.util.List;
 
+import static com.andavin.protocol.PacketSender.queuePacket;
+
 /**
  * @since November 15, 2018
  * @author Andavin
@@ -51,7 +53,28 @@ public abstract class VisualBridge implements Versioned {
      *                  that the blocks belong to.
      * @param blocks The block changes to send to the player.
      */
-    protected abstract void sendBlocks(Player player, Object chunkPair, List<VisualBlock> blocks);
+    protected void sendBlocks(Player player, Object chunkPair, List<VisualBlock> blocks) {
+
+        Object packet = this.createPacket(chunkPair, blocks);
+        if (packet != null) {
+            queuePacket(player, packet);
+        }
+    }
+
+    /**
+     * Create a block change packet for all of the blocks
+     * contained within the list.
+     * <p>
+     * Note that all blocks contained within the list must be inside
+     * of the given chunk or else unexpected behavior may occur.
+     *
+     * @param chunkPair The {@code ChunkCoordIntPair} of the chunk
+     *                  that the blocks belong to.
+     * @param blocks The block changes to create the packet for.
+     * @return The newly created packet or {@code null} if
+     *         there are no blocks in the list.
+     */
+    protected abstract Object createPacket(Object chunkPair, List<VisualBlock> blocks);
 
     /**
      * Create a new {@code ChunkCoordIntPair} for the given
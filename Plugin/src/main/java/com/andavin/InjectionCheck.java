@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin;
+
+import com.andavin.inject.MinecraftInjector;
+import com.andavin.inject.OfflineServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A command line tool that verifies every injection NMSUtils would
+ * make into a server JAR without starting the server or writing to
+ * the JAR (see {@link MinecraftInjector#verify(File, ClassLoader, PrintWriter, boolean)}).
+ * <pre>
+ *     java -cp NMSUtils.jar com.andavin.InjectionCheck spigot-1.13.2.jar [--verbose]
+ * </pre>
+ * The exit code is {@code 0} if every class passed verification,
+ * {@code 1} if any class failed and {@code 2} if the arguments were
+ * invalid. For Paperclip servers the patched JAR in the {@code cache}
+ * directory must be given rather than the Paperclip JAR itself.
+ *
+ * @since July 29, 2019
+ * @author Andavin
+ */
+public final class InjectionCheck {
+
+    private static final Pattern CRAFT_SERVER = Pattern.compile("org/bukkit/craftbukkit/(v\\d+_\\d+_R\\d+)/CraftServer\\.class");
+
+    private InjectionCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 1 || !new File(args[0]).isFile()) {
+            System.err.println("Usage: java -cp NMSUtils.jar " + InjectionCheck.class.getName() + " <server jar> [--verbose]");
+            System.exit(2);
+        }
+
+        // Load everything again with the server JAR first on the class
+        // path so that this runs the same as it would within the server
+        File serverJar = new File(args[0]);
+        URL plugin = InjectionCheck.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader loader = new URLClassLoader(new URL[]{ serverJar.toURI().toURL(), plugin },
+                ClassLoader.getSystemClassLoader().getParent());
+        Thread.currentThread().setContextClassLoader(loader);
+
+        Method run = Class.forName(InjectionCheck.class.getName(), true, loader)
+                .getDeclaredMethod("run", File.class, boolean.class);
+        run.setAccessible(true);
+        boolean verbose = args.length > 1 && (args[1].equals("-v") || args[1].equals("--verbose"));
+        System.exit((boolean) run.invoke(null, serverJar, verbose) ? 0 : 1);
+    }
+
+    private static boolean run(File serverJar, boolean verbose) throws IOException {
+
+        ClassLoader loader = InjectionCheck.class.getClassLoader();
+        OfflineServer.install(loader, findVersion(serverJar), "InjectionCheck");
+        NMSUtils.registerInjectors(OfflineServer.createPlugin(loader, "NMSUtils"));
+        return MinecraftInjector.verify(serverJar, loader, new PrintWriter(System.out), verbose);
+    }
+
+    private static String findVersion(File serverJar) throws IOException {
+
+        try (JarFile jar = new JarFile(serverJar)) {
+
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+
+                Matcher matcher = CRAFT_SERVER.matcher(entries.nextElement().getName());
+                if (matcher.matches()) {
+                    return matcher.group(1);
+                }
+            }
+        }
+
+        throw new IllegalArgumentException(serverJar.getName() + " is not a CraftBukkit server JAR");
+    }
+}
@@ -27,10 +27,12 @@ package com.andavin;
 import com.andavin.inject.MinecraftInjector;
 import com.andavin.inject.injectors.MinecraftServerInjector;
 import com.andavin.inject.injectors.NBTBaseInjector;
+import com.andavin.inject.injectors.TickProfilerInjector;
 import com.andavin.protocol.PacketListener;
 import com.andavin.protocol.ProtocolManager;
 import com.andavin.util.Logger;
 import com.andavin.util.MinecraftVersion;
+import com.andavin.visual.VisualTracker;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.event.EventHandler;
@@ -38,6 +40,7 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.material.Directional;
 import org.bukkit.material.Stairs;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import static com.andavin.reflect.Reflection.findClass;
@@ -54,24 +57,55 @@ public final class NMSUtils extends JavaPlugin implements Listener {
     public void onLoad() {
 
         instance = this;
+        MinecraftInjector.attachAgent(this); // Before anything that will be injected is loaded
         findClass("com.andavin.nbt.wrapper.NBTHelper");
-        MinecraftInjector.register(findMcClass("MinecraftServer"),
-                Versioned.getInstance(MinecraftServerInjector.class, this));
-        if (MinecraftVersion.lessThan(v1_12)) {
-            MinecraftInjector.register(findMcClass("NBTBase"),
-                    Versioned.getInstance(NBTBaseInjector.class));
-        }
+        registerInjectors(this);
     }
 
     @Override
     public void onEnable() {
 
+        if (Boolean.getBoolean("nmsutils.verify")) { // Dry run only
+            MinecraftInjector.verify(true);
+            Bukkit.getPluginManager().disablePlugin(this);
+            return;
+        }
+
         if (MinecraftInjector.inject()) {
             return;
         }
 
         this.protocolManager = Versioned.getInstance(ProtocolManager.class);
         Bukkit.getPluginManager().registerEvents(this, this);
+        Bukkit.getPluginManager().registerEvents(new VisualTracker(), this);
+    }
+
+    @Override
+    public void onDisable() {
+
+        if (this.protocolManager != null) {
+            this.protocolManager.shutdown();
+        }
+    }
+
+    /**
+     * Register all of the {@link com.andavin.inject.Injector}s
+     * for the current version with the {@link MinecraftInjector}.
+     *
+     * @param plugin The plugin that the injected classes belong to.
+     */
+    static void registerInjectors(Plugin plugin) {
+
+        MinecraftInjector.register(findMcClass("MinecraftServer"),
+                Versioned.getInstance(MinecraftServerInjector.class, plugin));
+        if (Boolean.getBoolean("nmsutils.profiler")) { // Wraps every tick so opt-in only
+            MinecraftInjector.register(Versioned.getInstance(TickProfilerInjector.class, plugin));
+        }
+
+        if (MinecraftVersion.lessThan(v1_12)) {
+            MinecraftInjector.register(findMcClass("NBTBase"),
+                    Versioned.getInstance(NBTBaseInjector.class));
+        }
     }
 
     /**
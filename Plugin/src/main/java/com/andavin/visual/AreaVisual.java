@@ -24,16 +24,20 @@
 
 package com.andavin.visual;
 
+import com.andavin.NMSUtils;
+import com.andavin.protocol.ChunkOverlay;
+import com.andavin.protocol.ProtocolManager;
 import com.andavin.util.LongHash;
 import com.andavin.visual.block.VisualBlock;
+import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.BlockFace;
 import org.bukkit.entity.Player;
 import org.bukkit.util.Vector;
 
-import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -45,6 +49,13 @@ import static java.util.stream.Collectors.toSet;
  * that will be easily updated back to what they were
  * formerly and never effect the server since it never
  * knows of their existence.
+ * <p>
+ * The chunks of an area are indexed by their {@link LongHash}
+ * coordinates and the chunk position of every visualized player
+ * is tracked, so that updates are only ever sent for the chunks
+ * that are within view distance of each player. The blocks of any
+ * other chunk are sent along with the chunk itself as the player
+ * moves within range of it.
  *
  * @since May 28, 2018
  * @author Andavin
@@ -52,8 +63,12 @@ import static java.util.stream.Collectors.toSet;
  */
 public final class AreaVisual {
 
+    private static final Set<AreaVisual> VISUALIZED = ConcurrentHashMap.newKeySet();
+
     private final Map<Long, ChunkVisual> chunks = new ConcurrentHashMap<>();
-    private final Map<UUID, WeakReference<Player>> visualized = new HashMap<>();
+    private final Map<UUID, VisualViewer> viewers = new ConcurrentHashMap<>();
+    private final ChunkOverlay overlay = this::overlay;
+    private volatile boolean visualized;
 
     /**
      * Get all of the players that have been visualized to using
@@ -63,8 +78,8 @@ public final class AreaVisual {
      * @return A set of all players that have been visualized to.
      */
     public Set<Player> getPlayers() {
-        return this.visualized.isEmpty() ? Collections.emptySet() : this.visualized.values().stream()
-                .map(WeakReference::get).filter(Objects::nonNull).collect(toSet());
+        return this.viewers.isEmpty() ? Collections.emptySet() : this.viewers.values().stream()
+                .map(VisualViewer::getPlayer).filter(Objects::nonNull).collect(toSet());
     }
 
     /**
@@ -77,8 +92,8 @@ public final class AreaVisual {
      */
     public AreaVisual forEach(Consumer<Player> action) {
 
-        if (!this.visualized.isEmpty()) {
-            this.visualized.values().stream().map(WeakReference::get).filter(Objects::nonNull).forEach(action);
+        if (!this.viewers.isEmpty()) {
+            this.viewers.values().stream().map(VisualViewer::getPlayer).filter(Objects::nonNull).forEach(action);
         }
 
         return this;
@@ -97,18 +112,28 @@ public final class AreaVisual {
      * all of the blocks from all of the visualized clients if they
      * are still online.
      * <p>
-     * Note that if the client is not in visual range of the blocks
-     * that have been added to this area, the blocks will most likely
-     * never be seen.
+     * Once a client has been visualized to, the blocks in each chunk
+     * of this area are also sent directly after the chunk itself every
+     * time it is sent to the client, so they are shown as soon as the
+     * client comes within range of them and are not lost when the
+     * chunk is reloaded.
      *
      * @param player The client to show the fake blocks to.
      * @return This AreaVisual object.
      */
     public AreaVisual visualize(Player player) {
 
-        synchronized (this.visualized) {
-            this.visualized.put(player.getUniqueId(), new WeakReference<>(player));
-            this.chunks.values().forEach(chunk -> chunk.visualize(player));
+        synchronized (this.viewers) {
+
+            if (this.viewers.isEmpty()) {
+                getProtocolManager().addChunkOverlay(this.overlay);
+                VISUALIZED.add(this);
+            }
+
+            VisualViewer viewer = new VisualViewer(player);
+            this.viewers.put(player.getUniqueId(), viewer);
+            this.visualized = true;
+            this.forEachInRange(viewer, chunk -> chunk.visualize(player));
         }
 
         return this;
@@ -142,17 +167,19 @@ public final class AreaVisual {
      */
     public AreaVisual refresh(Runnable action) {
 
-        if (!this.visualized.isEmpty()) {
+        if (!this.viewers.isEmpty()) {
 
-            Set<Player> players = this.getPlayers();
-            Map<Long, Set<VisualBlock>> snaps = new HashMap<>((int) (chunks.size() / 0.75));
+            this.visualized = true;
             if (action != null) {
-                this.chunks.forEach((hash, chunk) -> snaps.put(hash, chunk.snapshot()));
+                // Only the chunks within range of a player need to be compared
+                Map<Long, Set<VisualBlock>> snaps = new HashMap<>();
+                this.forEachViewer((player, viewer) -> this.forEachInRange(viewer, chunk ->
+                        snaps.computeIfAbsent(chunk.getChunk(), hash -> chunk.snapshot())));
                 action.run();
-                this.chunks.forEach((hash, chunk) -> players.forEach(player ->
-                        chunk.visualize(player, snaps.getOrDefault(hash, Collections.emptySet()))));
+                this.forEachViewer((player, viewer) -> this.forEachInRange(viewer, chunk ->
+                        chunk.visualize(player, snaps.getOrDefault(chunk.getChunk(), Collections.emptySet()))));
             } else {
-                this.chunks.values().forEach(chunk -> players.forEach(chunk::visualize));
+                this.forEachViewer((player, viewer) -> this.forEachInRange(viewer, chunk -> chunk.visualize(player)));
             }
         }
 
@@ -174,7 +201,16 @@ public final class AreaVisual {
      */
     public AreaVisual refresh(int x, int y, int z) {
         ChunkVisual chunk = this.chunks.get(LongHash.toLong(x >> 4, z >> 4));
-        return chunk != null ? this.forEach(player -> chunk.refresh(player, x, y, z)) : this;
+        if (chunk != null) {
+            this.forEachViewer((player, viewer) -> {
+
+                if (viewer.isInRange(chunk.getX(), chunk.getZ())) {
+                    chunk.refresh(player, x, y, z);
+                }
+            });
+        }
+
+        return this;
     }
 
     /**
@@ -185,11 +221,17 @@ public final class AreaVisual {
      * anymore, then the blocks will not be reset for them manually
      * and instead will reset on their own as soon as the player views
      * them again.
+     * <p>
+     * The blocks are no longer sent along with the chunks of this area
+     * until it is {@link #visualize(Player) visualized} or {@link #refresh()
+     * refreshed} again.
      *
      * @return This AreaVisual object.
      */
     public AreaVisual reset() {
-        return this.forEach(player -> this.chunks.values().forEach(chunk -> chunk.reset(player)));
+        this.visualized = false;
+        this.forEachViewer((player, viewer) -> this.forEachInRange(viewer, chunk -> chunk.reset(player)));
+        return this;
     }
 
     /**
@@ -202,8 +244,9 @@ public final class AreaVisual {
      */
     public AreaVisual reset(Player player) {
 
-        if (this.visualized.remove(player.getUniqueId()) != null) {
-            this.chunks.values().forEach(chunk -> chunk.reset(player));
+        VisualViewer viewer = this.removeViewer(player);
+        if (viewer != null) {
+            this.forEachInRange(viewer, chunk -> chunk.reset(player));
         }
 
         return this;
@@ -222,13 +265,15 @@ public final class AreaVisual {
      */
     public AreaVisual clear() {
 
-        if (!this.visualized.isEmpty()) {
+        if (!this.viewers.isEmpty()) {
 
-            synchronized (this.visualized) {
-                this.forEach(player -> this.chunks.values().forEach(chunk -> chunk.reset(player)));
+            synchronized (this.viewers) {
+                this.reset();
                 this.chunks.values().forEach(ChunkVisual::clear);
-                this.visualized.clear();
+                this.viewers.clear();
                 this.chunks.clear();
+                getProtocolManager().removeChunkOverlay(this.overlay);
+                VISUALIZED.remove(this);
             }
         }
 
@@ -294,8 +339,12 @@ public final class AreaVisual {
 
         VisualBlock block = chunk.removeBlock(x, y, z);
         if (block != null) {
-            this.forEach(player -> chunk.sendBlocks(player,
-                    Collections.singletonList(block.getRealType(player.getWorld()))));
+            this.forEachViewer((player, viewer) -> {
+
+                if (viewer.isInRange(chunk.getX(), chunk.getZ())) {
+                    chunk.sendBlocks(player, Collections.singletonList(block.getRealType(player.getWorld())));
+                }
+            });
         }
 
         return block;
@@ -959,4 +1008,137 @@ public final class AreaVisual {
         this.chunks.values().forEach(transformer);
         return this;
     }
+
+    /**
+     * The {@link ChunkOverlay} of this area that sends the blocks
+     * of a chunk to a visualized player every time the chunk itself
+     * is sent to them. Nothing is sent while the area is {@link #reset()
+     * reset}. This is called on the network threads.
+     */
+    private List<?> overlay(Player player, int x, int z) {
+
+        if (!this.visualized) {
+            return null;
+        }
+
+        VisualViewer viewer = this.viewers.get(player.getUniqueId());
+        if (viewer == null || !viewer.isInWorld()) {
+            return null;
+        }
+
+        ChunkVisual chunk = this.chunks.get(LongHash.toLong(x, z));
+        Object packet = chunk != null ? chunk.createPacket() : null;
+        return packet != null ? Collections.singletonList(packet) : null;
+    }
+
+    /**
+     * Execute the given action for each of the players that have been
+     * visualized to along with the {@link VisualViewer} of the player.
+     * Players that have gone offline are skipped.
+     */
+    private void forEachViewer(BiConsumer<Player, VisualViewer> action) {
+
+        for (VisualViewer viewer : this.viewers.values()) {
+
+            Player player = viewer.getPlayer();
+            if (player != null) {
+                action.accept(player, viewer);
+            }
+        }
+    }
+
+    /**
+     * Execute the given action for each {@link ChunkVisual} in this
+     * area that is within view distance of the given viewer. When the
+     * area contains more chunks than the player can see, the chunks in
+     * view are looked up by their coordinates rather than scanning
+     * every chunk in the area. Nothing is in range while the viewer
+     * is in a different world than the area.
+     */
+    private void forEachInRange(VisualViewer viewer, Consumer<ChunkVisual> action) {
+
+        if (!viewer.isInWorld()) {
+            return;
+        }
+
+        int distance = ChunkVisual.VIEW_DISTANCE, size = distance * 2 + 1;
+        if (size * size >= this.chunks.size()) {
+
+            for (ChunkVisual chunk : this.chunks.values()) {
+
+                if (viewer.isInRange(chunk.getX(), chunk.getZ())) {
+                    action.accept(chunk);
+                }
+            }
+
+            return;
+        }
+
+        int x = viewer.getX(), z = viewer.getZ();
+        for (int chunkX = x - distance; chunkX <= x + distance; chunkX++) {
+
+            for (int chunkZ = z - distance; chunkZ <= z + distance; chunkZ++) {
+
+                ChunkVisual chunk = this.chunks.get(LongHash.toLong(chunkX, chunkZ));
+                if (chunk != null) {
+                    action.accept(chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the {@link VisualViewer} of the given player and stop
+     * overlaying chunks if there are no players left.
+     *
+     * @param player The player to remove.
+     * @return The removed viewer or {@code null} if the
+     *         player was not visualized to.
+     */
+    private VisualViewer removeViewer(Player player) {
+
+        synchronized (this.viewers) {
+
+            VisualViewer viewer = this.viewers.remove(player.getUniqueId());
+            if (viewer != null && this.viewers.isEmpty()) {
+                getProtocolManager().removeChunkOverlay(this.overlay);
+                VISUALIZED.remove(this);
+            }
+
+            return viewer;
+        }
+    }
+
+    /**
+     * Update the chunk position of the given player in every
+     * area visual that the player has been visualized to.
+     *
+     * @param player The player that moved.
+     * @param location The new location of the player.
+     */
+    static void move(Player player, Location location) {
+
+        for (AreaVisual visual : VISUALIZED) {
+
+            VisualViewer viewer = visual.viewers.get(player.getUniqueId());
+            if (viewer != null) {
+                viewer.move(location);
+            }
+        }
+    }
+
+    /**
+     * Remove the given player from every area visual that the
+     * player has been visualized to without resetting any blocks.
+     * This should be called when the player disconnects.
+     *
+     * @param player The player to remove.
+     */
+    static void remove(Player player) {
+        VISUALIZED.forEach(visual -> visual.removeViewer(player));
+    }
+
+    private static ProtocolManager getProtocolManager() {
+        return NMSUtils.getInstance().getProtocolManager();
+    }
 }
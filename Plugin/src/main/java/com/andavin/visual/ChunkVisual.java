@@ -25,7 +25,6 @@
 package com.andavin.visual;
 
 import com.andavin.Versioned;
-import com.andavin.util.Logger;
 import com.andavin.util.LongHash;
 import com.andavin.visual.block.VisualBlock;
 import org.bukkit.Bukkit;
@@ -51,7 +50,7 @@ import static java.util.stream.Collectors.toList;
 public final class ChunkVisual {
 
     private static final int MAX_SNAPSHOTS = 10;
-    private static final int VIEW_DISTANCE = Bukkit.getViewDistance();
+    static final int VIEW_DISTANCE = Bukkit.getViewDistance();
     private static final VisualBridge BRIDGE = Versioned.getInstance(VisualBridge.class);
 
     private final int x, z;
@@ -787,6 +786,11 @@ public final class ChunkVisual {
      * <p>
      * Note that all blocks contained within the list must be inside
      * of this chunk or else unexpected behavior may occur.
+     * <p>
+     * If this chunk is not within view distance of the player, then
+     * nothing will be sent since the client does not have the chunk
+     * loaded. The blocks of the chunk are instead sent along with the
+     * chunk itself once the player comes within range of it.
      *
      * @param player The player to send the packet to.
      * @param blocks The block changes to send to the player.
@@ -798,17 +802,20 @@ public final class ChunkVisual {
         }
     }
 
+    /**
+     * Create a block change packet for all of the
+     * {@link VisualBlock blocks} that are currently in this chunk.
+     *
+     * @return The packet or {@code null} if there are no blocks.
+     */
+    Object createPacket() {
+        return this.blocks.isEmpty() ? null : BRIDGE.createPacket(this.chunkPair, new ArrayList<>(this.blocks.values()));
+    }
+
     private boolean isOutOfRange(Location location) {
 
         int x = location.getBlockX() >> 4;
         int z = location.getBlockZ() >> 4;
-        if (Math.abs((x) - this.x) > VIEW_DISTANCE || Math.abs((z) - this.z) > VIEW_DISTANCE) {
-            Logger.warn("[Visual] Attempting to show blocks to a player outside of their visual range.");
-            Logger.warn("[Visual] This can cause issues on the client and should be avoided.");
-            Logger.warn("[Visual] Player Chunk ({}, {}) -> This Chunk ({}, {})", x, z, this.x, this.z);
-            return true;
-        }
-
-        return false;
+        return Math.abs(x - this.x) > VIEW_DISTANCE || Math.abs(z - this.z) > VIEW_DISTANCE;
     }
 }
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.visual;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.lang.ref.WeakReference;
+import java.util.UUID;
+
+/**
+ * A player that an {@link AreaVisual} has been visualized to along
+ * with the world and chunk that the player is currently in. The position
+ * is kept up to date by the {@link VisualTracker} so that only the
+ * {@link ChunkVisual}s within view distance of the player have to
+ * be looked at whenever the area is updated.
+ * <p>
+ * The area is shown in the world that the player was in when it was
+ * visualized to them. While the player is in any other world, none of
+ * the chunks of the area are considered to be in range.
+ *
+ * @since August 03, 2019
+ * @author Andavin
+ */
+final class VisualViewer {
+
+    private final UUID world;
+    private final WeakReference<Player> player;
+    private volatile UUID current;
+    private volatile int x, z;
+
+    VisualViewer(Player player) {
+        this.world = player.getWorld().getUID();
+        this.player = new WeakReference<>(player);
+        this.move(player.getLocation());
+    }
+
+    /**
+     * Get the player that this viewer is for.
+     *
+     * @return The player or {@code null} if the
+     *         player is no longer online.
+     */
+    Player getPlayer() {
+        return this.player.get();
+    }
+
+    /**
+     * Get the X coordinate of the chunk that
+     * the player is currently in.
+     *
+     * @return The chunk X coordinate.
+     */
+    int getX() {
+        return x;
+    }
+
+    /**
+     * Get the Z coordinate of the chunk that
+     * the player is currently in.
+     *
+     * @return The chunk Z coordinate.
+     */
+    int getZ() {
+        return z;
+    }
+
+    /**
+     * Tell if the player is currently in the world
+     * that the area was visualized to them in.
+     *
+     * @return If the player is in the world of the area.
+     */
+    boolean isInWorld() {
+        return this.world.equals(this.current);
+    }
+
+    /**
+     * Update the world and chunk that the player is currently in.
+     *
+     * @param location The new location of the player.
+     */
+    void move(Location location) {
+        World world = location.getWorld();
+        this.current = world != null ? world.getUID() : null;
+        this.x = location.getBlockX() >> 4;
+        this.z = location.getBlockZ() >> 4;
+    }
+
+    /**
+     * Tell if the chunk with the given coordinates is within
+     * the {@link ChunkVisual#VIEW_DISTANCE view distance} of
+     * the player and is therefore loaded by their client. If
+     * the player is not {@link #isInWorld() in the world} of
+     * the area, then no chunk is in range.
+     *
+     * @param x The X coordinate of the chunk.
+     * @param z The Z coordinate of the chunk.
+     * @return If the chunk is within range of the player.
+     */
+    boolean isInRange(int x, int z) {
+        return this.isInWorld() && Math.abs(x - this.x) <= ChunkVisual.VIEW_DISTANCE &&
+                Math.abs(z - this.z) <= ChunkVisual.VIEW_DISTANCE;
+    }
+}
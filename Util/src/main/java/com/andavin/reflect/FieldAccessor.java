@@ -0,0 +1,435 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.reflect;
+
+import com.andavin.reflect.exception.UncheckedIllegalAccessException;
+import com.andavin.reflect.exception.UncheckedReflectiveOperationException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * An accessor for a single instance field that is resolved once
+ * into {@link MethodHandle}s rather than going through the reflective
+ * {@link Field#get(Object)} and {@link Field#set(Object, Object)} on
+ * every call.
+ * <p>
+ * Primitive fields can be read and written through the primitive
+ * getters and setters (e.g. {@link #getInt(Object)}) without boxing
+ * the value. These must match the type of the field exactly or else
+ * a {@link WrongMethodTypeException} is thrown.
+ * <p>
+ * Accessors should be created once and kept rather than being created
+ * for every access. Note that the JIT compiler only treats a method
+ * handle as a constant (and can therefore inline the field access) when
+ * it is read from a {@code static final} field. Since the handles of an
+ * accessor are held by the accessor itself, they are not inlined. Call
+ * sites that are hot enough for this to matter can keep the handle
+ * from {@link #getExactGetter()} or {@link #getExactSetter()} in their
+ * own {@code static final} field and invoke it directly:
+ * <pre>
+ *     private static final MethodHandle CHUNK_X =
+ *             PacketAccessor.of(PacketPlayOutMapChunk.class).field("a").getExactGetter();
+ *
+ *     int x = (int) CHUNK_X.invokeExact((Object) packet);
+ * </pre>
+ *
+ * @param <T> The type of the field.
+ * @since July 23, 2019
+ * @author Andavin
+ */
+public final class FieldAccessor<T> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Field field;
+    private final MethodHandle getter, setter, exactGetter, exactSetter;
+
+    /**
+     * Create a new accessor for the given field. If the field is
+     * not currently accessible, then an attempt will be made to
+     * make it accessible.
+     *
+     * @param field The field to create the accessor for.
+     * @throws IllegalArgumentException If the field is static.
+     * @throws SecurityException If the field was inaccessible
+     *                           and could not be made accessible.
+     * @throws UncheckedIllegalAccessException If the field could
+     *                                         not be accessed.
+     */
+    public FieldAccessor(Field field) throws IllegalArgumentException, SecurityException,
+            UncheckedIllegalAccessException {
+
+        if (Modifier.isStatic(field.getModifiers())) {
+            throw new IllegalArgumentException("Cannot create an accessor for static field " + field);
+        }
+
+        if (!field.isAccessible()) {
+            field.setAccessible(true);
+        }
+
+        Class<?> type = field.getType();
+        this.field = field;
+        try {
+            this.exactGetter = LOOKUP.unreflectGetter(field).asType(MethodType.methodType(type, Object.class));
+            this.exactSetter = LOOKUP.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, type));
+        } catch (IllegalAccessException e) {
+            throw new UncheckedIllegalAccessException(e.getMessage());
+        }
+
+        this.getter = this.exactGetter.asType(MethodType.methodType(Object.class, Object.class));
+        this.setter = this.exactSetter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+    }
+
+    /**
+     * Get the field that this accessor is for.
+     *
+     * @return The field.
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Get the {@link MethodHandle} that gets the value of the field.
+     * The handle is of the type {@code (Object)Object} and boxes the
+     * value if the field is of a primitive type.
+     *
+     * @return The getter of the field.
+     */
+    public MethodHandle getGetter() {
+        return getter;
+    }
+
+    /**
+     * Get the {@link MethodHandle} that sets the value of the field.
+     * The handle is of the type {@code (Object, Object)void} and unboxes
+     * the value if the field is of a primitive type.
+     *
+     * @return The setter of the field.
+     */
+    public MethodHandle getSetter() {
+        return setter;
+    }
+
+    /**
+     * Get the {@link MethodHandle} that gets the value of the field
+     * without boxing it. The handle is of the type {@code (Object)T}
+     * where {@code T} is the exact type of the field.
+     *
+     * @return The exact getter of the field.
+     */
+    public MethodHandle getExactGetter() {
+        return exactGetter;
+    }
+
+    /**
+     * Get the {@link MethodHandle} that sets the value of the field
+     * without unboxing it. The handle is of the type {@code (Object, T)void}
+     * where {@code T} is the exact type of the field.
+     *
+     * @return The exact setter of the field.
+     */
+    public MethodHandle getExactSetter() {
+        return exactSetter;
+    }
+
+    /**
+     * Get the value of the field from the given instance.
+     *
+     * @param instance The instance to get the value from.
+     * @return The value of the field.
+     */
+    public T get(Object instance) {
+
+        try {
+            Object value = this.getter.invokeExact(instance);
+            return (T) value;
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Set the value of the field for the given instance.
+     *
+     * @param instance The instance to set the value for.
+     * @param value The value to set the field to.
+     */
+    public void set(Object instance, T value) {
+
+        try {
+            this.setter.invokeExact(instance, (Object) value);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Get the value of the {@code int} field from the given instance.
+     *
+     * @param instance The instance to get the value from.
+     * @return The value of the field.
+     * @throws WrongMethodTypeException If the field is not an {@code int}.
+     */
+    public int getInt(Object instance) throws WrongMethodTypeException {
+
+        try {
+            return (int) this.exactGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Set the value of the {@code int} field for the given instance.
+     *
+     * @param instance The instance to set the value for.
+     * @param value The value to set the field to.
+     * @throws WrongMethodTypeException If the field is not an {@code int}.
+     */
+    public void setInt(Object instance, int value) throws WrongMethodTypeException {
+
+        try {
+            this.exactSetter.invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Get the value of the {@code long} field from the given instance.
+     *
+     * @param instance The instance to get the value from.
+     * @return The value of the field.
+     * @throws WrongMethodTypeException If the field is not a {@code long}.
+     */
+    public long getLong(Object instance) throws WrongMethodTypeException {
+
+        try {
+            return (long) this.exactGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Set the value of the {@code long} field for the given instance.
+     *
+     * @param instance The instance to set the value for.
+     * @param value The value to set the field to.
+     * @throws WrongMethodTypeException If the field is not a {@code long}.
+     */
+    public void setLong(Object instance, long value) throws WrongMethodTypeException {
+
+        try {
+            this.exactSetter.invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Get the value of the {@code short} field from the given instance.
+     *
+     * @param instance The instance to get the value from.
+     * @return The value of the field.
+     * @throws WrongMethodTypeException If the field is not a {@code short}.
+     */
+    public short getShort(Object instance) throws WrongMethodTypeException {
+
+        try {
+            return (short) this.exactGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Set the value of the {@code short} field for the given instance.
+     *
+     * @param instance The instance to set the value for.
+     * @param value The value to set the field to.
+     * @throws WrongMethodTypeException If the field is not a {@code short}.
+     */
+    public void setShort(Object instance, short value) throws WrongMethodTypeException {
+
+        try {
+            this.exactSetter.invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Get the value of the {@code byte} field from the given instance.
+     *
+     * @param instance The instance to get the value from.
+     * @return The value of the field.
+     * @throws WrongMethodTypeException If the field is not a {@code byte}.
+     */
+    public byte getByte(Object instance) throws WrongMethodTypeException {
+
+        try {
+            return (byte) this.exactGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Set the value of the {@code byte} field for the given instance.
+     *
+     * @param instance The instance to set the value for.
+     * @param value The value to set the field to.
+     * @throws WrongMethodTypeException If the field is not a {@code byte}.
+     */
+    public void setByte(Object instance, byte value) throws WrongMethodTypeException {
+
+        try {
+            this.exactSetter.invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Get the value of the {@code double} field from the given instance.
+     *
+     * @param instance The instance to get the value from.
+     * @return The value of the field.
+     * @throws WrongMethodTypeException If the field is not a {@code double}.
+     */
+    public double getDouble(Object instance) throws WrongMethodTypeException {
+
+        try {
+            return (double) this.exactGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Set the value of the {@code double} field for the given instance.
+     *
+     * @param instance The instance to set the value for.
+     * @param value The value to set the field to.
+     * @throws WrongMethodTypeException If the field is not a {@code double}.
+     */
+    public void setDouble(Object instance, double value) throws WrongMethodTypeException {
+
+        try {
+            this.exactSetter.invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Get the value of the {@code float} field from the given instance.
+     *
+     * @param instance The instance to get the value from.
+     * @return The value of the field.
+     * @throws WrongMethodTypeException If the field is not a {@code float}.
+     */
+    public float getFloat(Object instance) throws WrongMethodTypeException {
+
+        try {
+            return (float) this.exactGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Set the value of the {@code float} field for the given instance.
+     *
+     * @param instance The instance to set the value for.
+     * @param value The value to set the field to.
+     * @throws WrongMethodTypeException If the field is not a {@code float}.
+     */
+    public void setFloat(Object instance, float value) throws WrongMethodTypeException {
+
+        try {
+            this.exactSetter.invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Get the value of the {@code boolean} field from the given instance.
+     *
+     * @param instance The instance to get the value from.
+     * @return The value of the field.
+     * @throws WrongMethodTypeException If the field is not a {@code boolean}.
+     */
+    public boolean getBoolean(Object instance) throws WrongMethodTypeException {
+
+        try {
+            return (boolean) this.exactGetter.invokeExact(instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Set the value of the {@code boolean} field for the given instance.
+     *
+     * @param instance The instance to set the value for.
+     * @param value The value to set the field to.
+     * @throws WrongMethodTypeException If the field is not a {@code boolean}.
+     */
+    public void setBoolean(Object instance, boolean value) throws WrongMethodTypeException {
+
+        try {
+            this.exactSetter.invokeExact(instance, value);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FieldAccessor{" + field + '}';
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+
+        return new UncheckedReflectiveOperationException(e.getMessage(), e);
+    }
+}
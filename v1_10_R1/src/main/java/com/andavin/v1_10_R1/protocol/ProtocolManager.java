@@ -24,10 +24,35 @@
 
 package com.andavin.v1_10_R1.protocol;
 
+import com.andavin.protocol.Connection;
+import com.andavin.protocol.PacketAccessor;
+import com.andavin.protocol.PacketRateLimiter;
+import com.andavin.protocol.StatusResponseCache;
+import com.andavin.reflect.FieldAccessor;
+import com.andavin.util.LongHash;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.minecraft.server.v1_10_R1.BlockPosition;
+import net.minecraft.server.v1_10_R1.ChunkCoordIntPair;
+import net.minecraft.server.v1_10_R1.EnumProtocol;
+import net.minecraft.server.v1_10_R1.EnumProtocolDirection;
 import net.minecraft.server.v1_10_R1.MinecraftServer;
+import net.minecraft.server.v1_10_R1.NetworkManager;
 import net.minecraft.server.v1_10_R1.Packet;
+import net.minecraft.server.v1_10_R1.PacketDecoder;
+import net.minecraft.server.v1_10_R1.PacketDecompressor;
+import net.minecraft.server.v1_10_R1.PacketPlayOutBlockChange;
+import net.minecraft.server.v1_10_R1.PacketPlayOutChat;
+import net.minecraft.server.v1_10_R1.PacketPlayOutMapChunk;
+import net.minecraft.server.v1_10_R1.PacketPlayOutMultiBlockChange;
 import org.bukkit.Bukkit;
 import org.bukkit.craftbukkit.v1_10_R1.CraftServer;
+import org.bukkit.craftbukkit.v1_10_R1.entity.CraftPlayer;
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @since December 06, 2018
@@ -35,9 +60,144 @@ import org.bukkit.craftbukkit.v1_10_R1.CraftServer;
  */
 class ProtocolManager extends com.andavin.protocol.ProtocolManager {
 
+    private static final FieldAccessor<Object> BLOCK_POSITION = PacketAccessor.of(PacketPlayOutBlockChange.class).field("a");
+    private static final FieldAccessor<Byte> CHAT_TYPE = PacketAccessor.of(PacketPlayOutChat.class).field("b");
+    private static final Object ACTION_BAR_KEY = new Object();
+    private static final FieldAccessor<ChunkCoordIntPair> MULTI_CHUNK = PacketAccessor.of(PacketPlayOutMultiBlockChange.class).field("a");
+    private static final FieldAccessor<Integer> CHUNK_X = PacketAccessor.of(PacketPlayOutMapChunk.class).field("a");
+    private static final FieldAccessor<Integer> CHUNK_Z = PacketAccessor.of(PacketPlayOutMapChunk.class).field("b");
+
+    private final ServerConnectionProxy serverConnection;
+
     ProtocolManager() {
         MinecraftServer server = ((CraftServer) Bukkit.getServer()).getServer();
-        ServerConnectionProxy serverConnection = (ServerConnectionProxy) server.am();
-        serverConnection.setPacketListener((player, packet) -> (Packet) this.call(player, packet));
+        this.serverConnection = (ServerConnectionProxy) server.am();
+        this.serverConnection.setPacketListener((player, packet) -> (Packet) this.call(player, packet, true),
+                (player, packet) -> (Packet) this.call(player, packet, false), this::isListening);
+        this.serverConnection.setConnectionListener((manager, packet) ->
+                (Packet) this.callConnection(getConnection(manager), packet));
+    }
+
+    @Override
+    protected void sendDirect(Player player, Object packet) {
+        NetworkManager manager = ((CraftPlayer) player).getHandle().playerConnection.networkManager;
+        ((NetworkManagerProxy) manager).dispatch((Packet) packet);
+    }
+
+    @Override
+    protected int getPacketId(Class<?> packetClass) {
+
+        try {
+            Integer id = EnumProtocol.PLAY.a(EnumProtocolDirection.SERVERBOUND, (Packet) packetClass.newInstance());
+            return id != null ? id : -1;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    protected void setRateLimits(PacketRateLimiter.Settings settings) {
+        this.serverConnection.setRateLimits(settings);
+    }
+
+    @Override
+    protected Function<Object, Object> getCoalesceKey(Class<?> packetClass) {
+
+        if (packetClass == PacketPlayOutBlockChange.class) {
+            return BLOCK_POSITION::get;
+        }
+
+        if (packetClass == PacketPlayOutChat.class) {
+            // Only action bar messages (type 2) replace each other
+            return packet -> CHAT_TYPE.getByte(packet) == 2 ? ACTION_BAR_KEY : null;
+        }
+
+        return null;
+    }
+
+    @Override
+    protected void setCoalesceKeys(Map<Class<?>, Function<Object, Object>> keys) {
+        this.serverConnection.setCoalesceKeys((Map) keys, keys != null ? this::getBlockChunks : null);
+    }
+
+    @Override
+    public StatusResponseCache getStatusCache() {
+        return this.serverConnection.getStatusCache();
+    }
+
+    @Override
+    protected Channel getChannel(Player player) {
+        return ((CraftPlayer) player).getHandle().playerConnection.networkManager.channel;
+    }
+
+    @Override
+    protected Player getPlayer(Channel channel) {
+        Object handler = channel.pipeline().get("packet_handler");
+        return handler instanceof NetworkManagerProxy ? ((NetworkManagerProxy) handler).getPlayer() : null;
+    }
+
+    /**
+     * Get the chunks that the blocks changed by the given packet are in
+     * so that coalesced block changes can be sent before any other packet
+     * that changes blocks in the same chunks.
+     *
+     * @param packet The packet to get the chunks for.
+     * @return The chunks or {@code null} if the packet
+     *         does not change any blocks.
+     */
+    private long[] getBlockChunks(Packet packet) {
+
+        if (packet instanceof PacketPlayOutBlockChange) {
+            BlockPosition position = (BlockPosition) BLOCK_POSITION.get(packet);
+            return new long[]{ LongHash.toLong(position.getX() >> 4, position.getZ() >> 4) };
+        }
+
+        if (packet instanceof PacketPlayOutMultiBlockChange) {
+            ChunkCoordIntPair chunk = MULTI_CHUNK.get(packet);
+            return new long[]{ LongHash.toLong(chunk.x, chunk.z) };
+        }
+
+        return this.getChunks(packet);
+    }
+
+    @Override
+    protected long[] getChunks(Object packet) {
+        return packet instanceof PacketPlayOutMapChunk ?
+                new long[]{ LongHash.toLong(CHUNK_X.get(packet), CHUNK_Z.get(packet)) } : null;
+    }
+
+    @Override
+    protected EmbeddedChannel createReplayChannel(boolean outbound, boolean compressed) {
+
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.attr(NetworkManager.c).set(EnumProtocol.PLAY);
+        if (compressed) {
+            // A threshold of 0 accepts every compressed frame
+            channel.pipeline().addLast("decompress", new PacketDecompressor(0));
+        }
+
+        channel.pipeline().addLast("decoder", new PacketDecoder(outbound ?
+                EnumProtocolDirection.CLIENTBOUND : EnumProtocolDirection.SERVERBOUND));
+        return channel;
+    }
+
+    @Override
+    protected void setChannelInitializer(Consumer<Channel> initializer) {
+        this.serverConnection.setChannelInitializer(initializer);
+    }
+
+    @Override
+    protected void forEachChannel(Consumer<Channel> action) {
+        this.serverConnection.forEachChannel(action);
+    }
+
+    private static Connection getConnection(NetworkManagerProxy manager) {
+
+        Object connection = manager.connection;
+        if (connection == null) {
+            manager.connection = connection = new NetworkConnection(manager);
+        }
+
+        return (Connection) connection;
     }
 }
@@ -0,0 +1,51 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.v1_11_R1.inject.injectors;
+
+import com.andavin.inject.mixin.Mixin;
+import com.andavin.inject.mixin.Overwrite;
+import com.andavin.inject.mixin.Shadow;
+import com.andavin.v1_11_R1.protocol.ServerConnectionProxy;
+import net.minecraft.server.v1_11_R1.MinecraftServer;
+import net.minecraft.server.v1_11_R1.ServerConnection;
+
+/**
+ * Replaces the {@link ServerConnection} of the server with
+ * a {@link ServerConnectionProxy} when it is first created.
+ *
+ * @since July 30, 2019
+ * @author Andavin
+ */
+@Mixin(value = MinecraftServer.class, version = "1.0")
+abstract class MinecraftServerMixin {
+
+    @Shadow
+    private ServerConnection p;
+
+    @Overwrite
+    public ServerConnection an() {
+        return this.p == null ? (this.p = new ServerConnectionProxy((MinecraftServer) (Object) this)) : this.p;
+    }
+}
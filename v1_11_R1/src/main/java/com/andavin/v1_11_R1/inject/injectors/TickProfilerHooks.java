@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.v1_11_R1.inject.injectors;
+
+import com.andavin.inject.InjectorVersion;
+import com.andavin.tick.TickProfiler;
+import com.andavin.tick.TickProfiler.Phase;
+import net.minecraft.server.v1_11_R1.ServerConnection;
+import net.minecraft.server.v1_11_R1.WorldServer;
+import org.bukkit.craftbukkit.v1_11_R1.scheduler.CraftScheduler;
+
+/**
+ * The phases of the tick loop that are timed by the {@link TickProfilerMixin}.
+ * <p>
+ * The tick loop calls these methods directly, so this class is injected
+ * into the server along with the {@link TickProfiler}.
+ *
+ * @since August 01, 2019
+ * @author Andavin
+ */
+@InjectorVersion("1.0")
+public final class TickProfilerHooks {
+
+    private TickProfilerHooks() {
+    }
+
+    /**
+     * Tick the given world as the {@link Phase#WORLD} phase.
+     */
+    public static void tickWorld(WorldServer world) {
+        long start = TickProfiler.startPhase();
+        world.doTick();
+        TickProfiler.endPhase(Phase.WORLD, start);
+    }
+
+    /**
+     * Tick the entities of the given world as the {@link Phase#ENTITY} phase.
+     */
+    public static void tickEntities(WorldServer world) {
+        long start = TickProfiler.startPhase();
+        world.tickEntities();
+        TickProfiler.endPhase(Phase.ENTITY, start);
+    }
+
+    /**
+     * Tick the given connection as the {@link Phase#NETWORK} phase.
+     */
+    public static void tickNetwork(ServerConnection connection) {
+        long start = TickProfiler.startPhase();
+        connection.c();
+        TickProfiler.endPhase(Phase.NETWORK, start);
+    }
+
+    /**
+     * Run the tasks of the given scheduler as the {@link Phase#SCHEDULER} phase.
+     */
+    public static void tickScheduler(CraftScheduler scheduler, int currentTick) {
+        long start = TickProfiler.startPhase();
+        scheduler.mainThreadHeartbeat(currentTick);
+        TickProfiler.endPhase(Phase.SCHEDULER, start);
+    }
+}
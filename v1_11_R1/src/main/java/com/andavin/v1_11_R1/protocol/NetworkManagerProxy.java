@@ -25,35 +25,67 @@
 package com.andavin.v1_11_R1.protocol;
 
 import com.andavin.inject.InjectorVersion;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import net.minecraft.server.v1_11_R1.*;
 import org.bukkit.entity.Player;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
 
 /**
  * @since December 06, 2018
  * @author Andavin
  */
-@InjectorVersion("1.0")
+@InjectorVersion("1.11")
 public class NetworkManagerProxy extends NetworkManager {
 
-    public BiFunction<Player, Packet, Packet> packetListener;
+    public BiFunction<Player, Packet, Packet> inboundListener, outboundListener;
+    public BiPredicate<UUID, Class<?>> packetFilter;
+    public BiFunction<NetworkManagerProxy, Packet, Packet> connectionListener;
+    public Map<Class<?>, Function<Packet, Object>> coalesceKeys;
+    public Function<Packet, long[]> coalesceChunks;
+    public Object connection;
     private String name;
+    private volatile UUID uniqueId;
+    private volatile Player player;
+    private volatile boolean flushQueued; // Only cleared on the event loop
+    private final Map<Object, Packet> coalesced = new LinkedHashMap<>();
 
-    public NetworkManagerProxy(EnumProtocolDirection enumprotocoldirection, BiFunction<Player, Packet, Packet> packetListener) {
+    public NetworkManagerProxy(EnumProtocolDirection enumprotocoldirection,
+                               BiFunction<Player, Packet, Packet> inboundListener,
+                               BiFunction<Player, Packet, Packet> outboundListener, BiPredicate<UUID, Class<?>> packetFilter,
+                               BiFunction<NetworkManagerProxy, Packet, Packet> connectionListener,
+                               Map<Class<?>, Function<Packet, Object>> coalesceKeys,
+                               Function<Packet, long[]> coalesceChunks) {
         super(enumprotocoldirection);
-        this.packetListener = packetListener;
+        this.inboundListener = inboundListener;
+        this.outboundListener = outboundListener;
+        this.packetFilter = packetFilter;
+        this.connectionListener = connectionListener;
+        this.coalesceKeys = coalesceKeys;
+        this.coalesceChunks = coalesceChunks;
     }
 
     @Override
     public void sendPacket(Packet<?> packet) {
 
-        packet = this.handleListener(packet);
-        if (packet != null) {
-            super.sendPacket(packet);
+        packet = this.handleListener(packet, false);
+        if (packet != null && !this.coalesce(packet)) {
+            this.dispatch(packet);
         }
     }
 
@@ -62,12 +94,23 @@ public class NetworkManagerProxy extends NetworkManager {
     public final void sendPacket(Packet<?> packet, GenericFutureListener<? extends Future<? super Void>> genericfuturelistener,
                                  GenericFutureListener<? extends Future<? super Void>>... agenericfuturelistener) {
 
-        packet = this.handleListener(packet);
+        packet = this.handleListener(packet, false);
         if (packet != null) {
+            this.dispatchReleased(packet);
             super.sendPacket(packet, genericfuturelistener, agenericfuturelistener);
         }
     }
 
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        super.channelInactive(ctx);
+        this.player = null;
+        this.uniqueId = null;
+        synchronized (this.coalesced) {
+            this.coalesced.clear();
+        }
+    }
+
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, Packet packet) throws Exception {
 
@@ -75,7 +118,7 @@ public class NetworkManagerProxy extends NetworkManager {
         // won't be handled by the super method
         if (this.channel.isOpen()) {
 
-            packet = this.handleListener(packet);
+            packet = this.handleListener(packet, true);
             if (packet == null) {
                 return;
             }
@@ -84,26 +127,433 @@ public class NetworkManagerProxy extends NetworkManager {
         super.channelRead0(ctx, packet);
     }
 
-    private Packet handleListener(Packet packet) {
+    /**
+     * Send all of the given packets through this network manager.
+     * <p>
+     * Each packet is passed to the packet listener as normal, but
+     * instead of writing and flushing every packet to the channel
+     * separately, all of the packets are written and then the channel
+     * is flushed a single time. If {@code flush} is {@code false}, then
+     * the channel is not flushed at all and the packets will be flushed
+     * at the end of the current server tick (or sooner if something else
+     * flushes the channel before then).
+     * <p>
+     * Since the packets are written directly to the channel, they skip
+     * the protocol switch and the queue of the network manager. Therefore,
+     * they are only written this way while the connection is in the
+     * {@code Play} protocol. If the channel is not currently open or the
+     * connection is in any other protocol, then the packets are sent one
+     * at a time through the regular procedure instead.
+     *
+     * @param packets The packets to send.
+     * @param flush If the channel should be flushed after the packets
+     *              are written or if it should wait until the end of
+     *              the server tick.
+     * @see #flushQueued()
+     */
+    public void sendPackets(List<Packet> packets, boolean flush) {
 
-        if (this.name == null) {
+        List<Packet> handled = new ArrayList<>(packets.size());
+        for (Packet packet : packets) {
 
-            if (packet instanceof PacketLoginInStart) {
-                this.name = ((PacketLoginInStart) packet).a().getName();
+            packet = this.handleListener(packet, false);
+            if (packet != null && !this.coalesce(packet)) {
+
+                List<Packet> released = this.release(packet);
+                if (released != null) {
+                    handled.addAll(released);
+                }
+
+                handled.add(packet);
             }
-        } else if (this.packetListener != null) {
+        }
 
-            PacketListener listener = this.i();
-            if (listener instanceof PlayerConnection) {
+        if (handled.isEmpty()) {
+            return;
+        }
+
+        if (this.channel == null || !this.channel.isOpen()) {
+
+            handled.forEach(this::dispatch);
+            return;
+        }
+
+        if (this.channel.eventLoop().inEventLoop()) {
+            this.write(handled, flush);
+        } else {
+            this.channel.eventLoop().execute(() -> this.write(handled, flush));
+        }
+    }
+
+    /**
+     * Send the given packet through this network manager
+     * without passing it to the packet listener.
+     * <p>
+     * Any coalesced packets that change blocks in the same
+     * chunks as the packet are sent before it.
+     *
+     * @param packet The packet to send.
+     */
+    public void dispatch(Packet packet) {
+        this.dispatchReleased(packet);
+        super.sendPacket(packet);
+    }
+
+    /**
+     * Send the given packet that has already been encoded into the
+     * given buffer by writing the buffer directly to the handler before
+     * the {@code encoder} so that the packet is not encoded again for
+     * this connection. It is written through the event loop just like
+     * any other packet and any coalesced packets that change blocks in
+     * the same chunks as the packet are sent before it.
+     * <p>
+     * This is only possible while the connection is in the {@code Play}
+     * protocol and nothing other than this network manager is placed
+     * after the {@code encoder}, since those handlers expect packets
+     * rather than encoded buffers. The queue of the network manager
+     * itself only holds packets while the channel is not open, so it
+     * is always empty here.
+     *
+     * @param packet The packet to send.
+     * @param buf The encoded packet. It is retained for as
+     *            long as this connection needs it.
+     * @return If the packet was sent or {@code false} if it
+     *         must be sent through the regular procedure.
+     */
+    public boolean sendEncoded(Packet packet, ByteBuf buf) {
+
+        if (this.channel == null || !this.channel.isOpen() || !this.isPlay(Collections.singletonList(packet))) {
+            return false;
+        }
+
+        ChannelPipeline pipeline = this.channel.pipeline();
+        boolean afterEncoder = false;
+        for (Map.Entry<String, ChannelHandler> entry : pipeline) {
+
+            if (afterEncoder && entry.getValue() != this) {
+                return false;
+            }
+
+            afterEncoder |= entry.getKey().equals("encoder");
+        }
+
+        ChannelHandlerContext ctx = pipeline.context("encoder");
+        if (ctx == null) {
+            return false;
+        }
+
+        this.dispatchReleased(packet);
+        ByteBuf encoded = buf.duplicate().retain();
+        if (this.channel.eventLoop().inEventLoop()) {
+            ctx.writeAndFlush(encoded, ctx.voidPromise());
+        } else {
+            this.channel.eventLoop().execute(() -> ctx.writeAndFlush(encoded, ctx.voidPromise()));
+        }
+
+        return true;
+    }
+
+    /**
+     * Write any packets that have been coalesced during this tick
+     * and flush the channel if any packets have been written to it
+     * via {@link #sendPackets(List, boolean)} without being flushed
+     * since the last time this method was called. Both happen on the
+     * event loop of the channel, so packets that are still waiting to
+     * be written when this is called are flushed at the end of the
+     * next tick at the latest.
+     * <p>
+     * This is called by the server connection at the end of
+     * every server tick.
+     */
+    public void flushQueued() {
+
+        List<Packet> coalesced;
+        synchronized (this.coalesced) {
+
+            if (this.coalesced.isEmpty()) {
+                coalesced = null;
+            } else {
+                coalesced = new ArrayList<>(this.coalesced.values());
+                this.coalesced.clear();
+            }
+        }
+
+        if (this.channel == null || !this.channel.isOpen() || coalesced == null && !this.flushQueued) {
+            return;
+        }
+
+        if (this.channel.eventLoop().inEventLoop()) {
+            this.flush(coalesced);
+        } else {
+            this.channel.eventLoop().execute(() -> this.flush(coalesced));
+        }
+    }
+
+    private void flush(List<Packet> coalesced) {
+
+        if (coalesced != null) {
+            // Writing the coalesced packets flushes anything else that was queued
+            this.write(coalesced, true);
+        } else if (this.flushQueued) {
+            this.flushQueued = false;
+            this.channel.flush();
+        }
+    }
+
+    private void write(List<Packet> packets, boolean flush) {
+
+        if (!this.isPlay(packets)) {
+            packets.forEach(this::dispatch);
+            return;
+        }
+
+        for (Packet packet : packets) {
+            this.channel.write(packet, this.channel.voidPromise());
+        }
+
+        if (flush) {
+            this.flushQueued = false;
+            this.channel.flush();
+        } else {
+            this.flushQueued = true;
+        }
+    }
+
+    private boolean isPlay(List<Packet> packets) {
+
+        if (this.channel.attr(NetworkManager.c).get() != EnumProtocol.PLAY) {
+            return false;
+        }
+
+        for (Packet packet : packets) {
+
+            if (EnumProtocol.a(packet) != EnumProtocol.PLAY) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Hold back the given packet until the end of the tick if its
+     * class is coalesced. If another packet with the same key is
+     * sent before then, it will replace this packet so that only
+     * the last packet for each key is actually sent.
+     *
+     * @param packet The packet to coalesce.
+     * @return If the packet was held back and should not be sent now.
+     */
+    private boolean coalesce(Packet packet) {
+
+        Map<Class<?>, Function<Packet, Object>> keys = this.coalesceKeys;
+        if (keys == null || keys.isEmpty()) {
+            return false;
+        }
+
+        Function<Packet, Object> keyFunction = keys.get(packet.getClass());
+        if (keyFunction == null || this.getPlayer() == null) {
+            return false;
+        }
+
+        Object key;
+        try {
+            key = keyFunction.apply(packet);
+        } catch (Throwable e) {
+            MinecraftServer.LOGGER.error("Exception thrown while getting coalesce key.", e);
+            return false;
+        }
+
+        if (key == null) {
+            return false;
+        }
+
+        key = new AbstractMap.SimpleImmutableEntry<>(packet.getClass(), key);
+        synchronized (this.coalesced) {
+            // Remove first so that the packet is sent in the position of the last one
+            this.coalesced.remove(key);
+            this.coalesced.put(key, packet);
+        }
+
+        return true;
+    }
+
+    /**
+     * Send any coalesced packets that change blocks in the same
+     * chunks as the given packet without passing them to the
+     * packet listener.
+     *
+     * @param packet The packet that is about to be sent.
+     * @see #release(Packet)
+     */
+    private void dispatchReleased(Packet packet) {
+
+        List<Packet> released = this.release(packet);
+        if (released != null) {
+
+            for (Packet pending : released) {
+                super.sendPacket(pending);
+            }
+        }
+    }
+
+    /**
+     * Remove the coalesced packets that change blocks in the same
+     * chunks as the given packet so that they can be sent before it.
+     * Otherwise, the client would apply an older coalesced block change
+     * on top of the newer blocks in the packet at the end of the tick.
+     *
+     * @param packet The packet that is about to be sent.
+     * @return The removed packets in the order they were coalesced
+     *         or {@code null} if there are none.
+     */
+    private List<Packet> release(Packet packet) {
+
+        Function<Packet, long[]> chunkFunction = this.coalesceChunks;
+        if (chunkFunction == null) {
+            return null;
+        }
+
+        long[] chunks;
+        try {
+            chunks = chunkFunction.apply(packet);
+        } catch (Throwable e) {
+            MinecraftServer.LOGGER.error("Exception thrown while getting coalesce chunks.", e);
+            return null;
+        }
+
+        if (chunks == null) {
+            return null;
+        }
+
+        List<Packet> released = null;
+        synchronized (this.coalesced) {
+
+            Iterator<Packet> itr = this.coalesced.values().iterator();
+            while (itr.hasNext()) {
+
+                Packet pending = itr.next();
+                long[] pendingChunks = chunkFunction.apply(pending);
+                if (pendingChunks != null && overlaps(chunks, pendingChunks)) {
+
+                    if (released == null) {
+                        released = new ArrayList<>();
+                    }
+
+                    released.add(pending);
+                    itr.remove();
+                }
+            }
+        }
+
+        return released;
+    }
+
+    private Packet handleListener(Packet packet, boolean inbound) {
+
+        if (this.name == null && packet instanceof PacketLoginInStart) {
+            this.name = ((PacketLoginInStart) packet).a().getName();
+        }
+
+        // Only resolve the player if something is listening for this packet
+        if (this.packetFilter == null || !this.packetFilter.test(this.uniqueId, packet.getClass())) {
+            return packet;
+        }
+
+        Player player = this.getPlayer();
+        if (player != null) {
+
+            BiFunction<Player, Packet, Packet> listener = inbound ? this.inboundListener : this.outboundListener;
+            if (listener != null) {
 
                 try {
-                    return this.packetListener.apply(((PlayerConnection) listener).player.getBukkitEntity(), packet);
+                    return listener.apply(player, packet);
                 } catch (Throwable e) {
                     MinecraftServer.LOGGER.error("Exception thrown while handling packet listener.", e);
                 }
             }
+        } else if (this.connectionListener != null) {
+            // There is no player yet so this is a Handshaking, Status or Login packet
+
+            try {
+                return this.connectionListener.apply(this, packet);
+            } catch (Throwable e) {
+                MinecraftServer.LOGGER.error("Exception thrown while handling connection listener.", e);
+            }
         }
 
         return packet;
     }
+
+    private static boolean overlaps(long[] chunks, long[] other) {
+
+        for (long chunk : chunks) {
+
+            for (long o : other) {
+
+                if (chunk == o) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the name that the client sent when it started
+     * to log in through this network manager.
+     *
+     * @return The name of the client or {@code null} if
+     *         the client has not started to log in yet.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Get the {@link Player} that is connected through this
+     * network manager.
+     * <p>
+     * The player is bound to this network manager the first time
+     * it is requested after the connection has entered the {@code Play}
+     * protocol (i.e. a {@link PlayerConnection} is listening) and is
+     * released once the channel becomes inactive. This way it does not
+     * need to be resolved again for every packet that is handled.
+     *
+     * @return The player or {@code null} if the connection is not
+     *         in the {@code Play} protocol or has been disconnected.
+     */
+    public Player getPlayer() {
+
+        Player player = this.player;
+        if (player == null && this.channel != null && this.channel.isOpen()) {
+
+            PacketListener listener = this.i();
+            if (listener instanceof PlayerConnection) {
+
+                // The player is set after the PlayerConnection is registered
+                EntityPlayer handle = ((PlayerConnection) listener).player;
+                if (handle != null) {
+                    player = handle.getBukkitEntity();
+                    this.uniqueId = player.getUniqueId();
+                    this.player = player;
+                }
+            }
+        }
+
+        return player;
+    }
+
+    /**
+     * Get the {@link UUID} of the {@link #getPlayer() player}
+     * that is connected through this network manager.
+     *
+     * @return The UUID of the player or {@code null} if the
+     *         connection is not bound to a player.
+     * @see #getPlayer()
+     */
+    public UUID getUniqueId() {
+        return this.getPlayer() != null ? this.uniqueId : null;
+    }
 }
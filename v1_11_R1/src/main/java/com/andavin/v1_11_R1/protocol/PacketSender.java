@@ -24,11 +24,15 @@
 
 package com.andavin.v1_11_R1.protocol;
 
-import net.minecraft.server.v1_11_R1.Packet;
-import net.minecraft.server.v1_11_R1.PlayerConnection;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import net.minecraft.server.v1_11_R1.*;
 import org.bukkit.craftbukkit.v1_11_R1.entity.CraftPlayer;
 import org.bukkit.entity.Player;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -44,7 +48,117 @@ class PacketSender extends com.andavin.protocol.PacketSender {
 
     @Override
     protected void send(Player player, List<Object> packets) {
+        this.send(player, packets, true);
+    }
+
+    @Override
+    protected void queue(Player player, List<Object> packets) {
+        this.send(player, packets, false);
+    }
+
+    @Override
+    protected void sendAll(Collection<? extends Player> players, Object packet) {
+
+        if (players.isEmpty()) {
+            return;
+        }
+
+        Packet nmsPacket = (Packet) packet;
+        boolean special = isSpecial(packet);
+        List<PlayerConnection> connections = new ArrayList<>(players.size());
+        for (Player player : players) {
+
+            PlayerConnection conn = ((CraftPlayer) player).getHandle().playerConnection;
+            if (!special && isBroadcastable(conn.networkManager, nmsPacket)) {
+                connections.add(conn);
+            } else {
+                conn.sendPacket(nmsPacket);
+            }
+        }
+
+        if (connections.isEmpty()) {
+            return;
+        }
+
+        ByteBuf buf = encode(nmsPacket);
+        if (buf == null) {
+            connections.forEach(conn -> conn.sendPacket(nmsPacket));
+            return;
+        }
+
+        try {
+
+            for (PlayerConnection conn : connections) {
+
+                // Compression and the length prefix are still
+                // applied for each connection individually
+                if (!((NetworkManagerProxy) conn.networkManager).sendEncoded(nmsPacket, buf)) {
+                    conn.sendPacket(nmsPacket);
+                }
+            }
+        } finally {
+            buf.release();
+        }
+    }
+
+    private void send(Player player, List<Object> packets, boolean flush) {
+
         PlayerConnection conn = ((CraftPlayer) player).getHandle().playerConnection;
-        packets.stream().map(Packet.class::cast).forEach(conn::sendPacket);
+        if (conn.networkManager instanceof NetworkManagerProxy && isBatchable(packets)) {
+            ((NetworkManagerProxy) conn.networkManager).sendPackets((List) packets, flush);
+        } else {
+            packets.stream().map(Packet.class::cast).forEach(conn::sendPacket);
+        }
+    }
+
+    private static boolean isBatchable(List<Object> packets) {
+
+        for (Object packet : packets) {
+
+            if (isSpecial(packet)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isSpecial(Object packet) {
+        // These packets are handled specially by the PlayerConnection
+        // so they need to be sent through it rather than directly
+        return packet instanceof PacketPlayOutChat || packet instanceof PacketPlayOutSpawnPosition;
+    }
+
+    private static boolean isBroadcastable(NetworkManager manager, Packet packet) {
+
+        if (!(manager instanceof NetworkManagerProxy)) {
+            return false;
+        }
+
+        // The connection must be in the Play protocol and nothing
+        // can be listening for the packet since listeners are able
+        // to modify or cancel it for each player individually
+        NetworkManagerProxy proxy = (NetworkManagerProxy) manager;
+        return proxy.getPlayer() != null && (proxy.outboundListener == null ||
+                proxy.packetFilter == null || !proxy.packetFilter.test(proxy.getUniqueId(), packet.getClass()));
+    }
+
+    private static ByteBuf encode(Packet packet) {
+
+        Integer id = EnumProtocol.PLAY.a(EnumProtocolDirection.CLIENTBOUND, packet);
+        if (id == null) {
+            return null;
+        }
+
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.buffer();
+        try {
+            PacketDataSerializer serializer = new PacketDataSerializer(buf);
+            serializer.d(id);
+            packet.b(serializer);
+            return buf;
+        } catch (IOException | RuntimeException e) {
+            buf.release();
+            return null;
+        }
     }
 }
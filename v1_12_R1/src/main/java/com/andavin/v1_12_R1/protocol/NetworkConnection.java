@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.v1_12_R1.protocol;
+
+import com.andavin.protocol.Connection;
+
+import java.net.SocketAddress;
+
+/**
+ * @since July 21, 2019
+ * @author Andavin
+ */
+class NetworkConnection implements Connection {
+
+    private final NetworkManagerProxy manager;
+
+    NetworkConnection(NetworkManagerProxy manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    public SocketAddress getAddress() {
+        return this.manager.getSocketAddress();
+    }
+
+    @Override
+    public String getName() {
+        return this.manager.getName();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.manager.channel != null && this.manager.channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+
+        if (this.manager.channel != null) {
+            this.manager.channel.close();
+        }
+    }
+}
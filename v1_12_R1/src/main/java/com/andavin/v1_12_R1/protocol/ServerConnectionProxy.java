@@ -25,6 +25,8 @@
 package com.andavin.v1_12_R1.protocol;
 
 import com.andavin.inject.InjectorVersion;
+import com.andavin.protocol.PacketRateLimiter;
+import com.andavin.protocol.StatusResponseCache;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
 import io.netty.channel.epoll.Epoll;
@@ -34,19 +36,25 @@ import io.netty.handler.timeout.ReadTimeoutHandler;
 import net.minecraft.server.v1_12_R1.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.bukkit.craftbukkit.v1_12_R1.event.CraftEventFactory;
 import org.bukkit.entity.Player;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.InetAddress;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @since December 06, 2018
  * @author Andavin
  */
-@InjectorVersion("1.0")
+@InjectorVersion("1.12")
 public class ServerConnectionProxy extends ServerConnection {
 
     private static final Logger LOGGER = LogManager.getLogger(ServerConnection.class);
@@ -54,12 +62,23 @@ public class ServerConnectionProxy extends ServerConnection {
     private final MinecraftServer server;
     private final List<ChannelFuture> futures;
     private final List<NetworkManager> networkManagers;
-    private BiFunction<Player, Packet, Packet> packetListener;
+    private BiFunction<Player, Packet, Packet> inboundListener, outboundListener;
+    private BiPredicate<UUID, Class<?>> packetFilter;
+    private BiFunction<NetworkManagerProxy, Packet, Packet> connectionListener;
+    private Map<Class<?>, Function<Packet, Object>> coalesceKeys;
+    private Function<Packet, long[]> coalesceChunks;
+    private volatile PacketRateLimiter.Settings rateLimits;
+    private final PacketRateLimiter.ConnectionThrottle connectionThrottle = new PacketRateLimiter.ConnectionThrottle();
+    private volatile Consumer<Channel> channelInitializer;
+    private final StatusResponseCache statusCache;
 
     public ServerConnectionProxy(MinecraftServer server) {
 
         super(server);
         this.server = server;
+        this.statusCache = new StatusResponseCache(NetworkManager.c, EnumProtocol.HANDSHAKING, EnumProtocol.STATUS,
+                PacketStatusInStart.class, server::getVersion, server::getPlayerCount, address -> CraftEventFactory
+                .callServerListPingEvent(server.server, address, server.getMotd(), server.getPlayerCount(), server.getMaxPlayers()));
 
         try {
             Field g = ServerConnection.class.getDeclaredField("g");
@@ -100,36 +119,192 @@ public class ServerConnectionProxy extends ServerConnection {
                     } catch (ChannelException ignored) {
                     }
 
+                    if (!connectionThrottle.tryConnect(channel.remoteAddress(), rateLimits)) {
+                        channel.close();
+                        return;
+                    }
+
                     channel.pipeline().addLast("timeout", new ReadTimeoutHandler(30))
                             .addLast("legacy_query", new LegacyPingHandler(ServerConnectionProxy.this))
                             .addLast("splitter", new PacketSplitter())
+                            .addLast("limiter", new PacketRateLimiter(() -> rateLimits, NetworkManager.c, EnumProtocol.PLAY))
                             .addLast("decoder", new PacketDecoder(EnumProtocolDirection.SERVERBOUND))
                             .addLast("prepender", new PacketPrepender())
                             .addLast("encoder", new PacketEncoder(EnumProtocolDirection.CLIENTBOUND));
+                    if (statusCache.isEnabled()) {
+                        channel.pipeline().addBefore("legacy_query", "legacy_cache", statusCache.getLegacyHandler())
+                                .addBefore("encoder", "status_cache", statusCache.getStatusHandler());
+                    }
 
-                    NetworkManager networkmanager = new NetworkManagerProxy(EnumProtocolDirection.SERVERBOUND, packetListener);
+                    NetworkManager networkmanager = new NetworkManagerProxy(EnumProtocolDirection.SERVERBOUND,
+                            inboundListener, outboundListener, packetFilter, connectionListener, coalesceKeys, coalesceChunks);
                     networkManagers.add(networkmanager);
                     channel.pipeline().addLast("packet_handler", networkmanager);
                     networkmanager.setPacketListener(new HandshakeListener(server, networkmanager));
+
+                    Consumer<Channel> initializer = channelInitializer;
+                    if (initializer != null) {
+                        initializer.accept(channel);
+                    }
                 }
             }).group((EventLoopGroup) lazyinitvar.c()).localAddress(address, i).bind().syncUninterruptibly());
         }
     }
 
+    @Override
+    public void c() {
+
+        super.c();
+        // Flush everything that was queued to be sent during this tick
+        synchronized (this.networkManagers) {
+
+            for (NetworkManager manager : this.networkManagers) {
+                ((NetworkManagerProxy) manager).flushQueued();
+            }
+        }
+    }
+
+    /**
+     * Set the initializer that will be applied to the {@link Channel}
+     * of every new connection once its pipeline has been set up. This
+     * can be used to add custom handlers to the pipeline.
+     *
+     * @param channelInitializer The initializer to set to.
+     * @see #forEachChannel(Consumer)
+     */
+    public void setChannelInitializer(Consumer<Channel> channelInitializer) {
+        this.channelInitializer = channelInitializer;
+    }
+
+    /**
+     * Execute the given action for the {@link Channel} of every
+     * connection that is currently open. The action is executed
+     * on the event loop of each channel.
+     *
+     * @param action The action to execute.
+     */
+    public void forEachChannel(Consumer<Channel> action) {
+
+        synchronized (this.networkManagers) {
+
+            for (NetworkManager manager : this.networkManagers) {
+
+                Channel channel = manager.channel;
+                if (channel != null && channel.isOpen()) {
+                    channel.eventLoop().execute(() -> action.accept(channel));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the {@link StatusResponseCache} that is used to answer
+     * status and legacy ping requests for new connections.
+     *
+     * @return The status response cache.
+     */
+    public StatusResponseCache getStatusCache() {
+        return this.statusCache;
+    }
+
+    /**
+     * Set the {@link PacketRateLimiter.Settings limits} that are used
+     * by the rate limiter of every connection and to throttle new
+     * connections. The limits will apply to existing connections as
+     * well as any new connections.
+     *
+     * @param rateLimits The limits to set to or {@code null}
+     *                   to remove all limits.
+     */
+    public void setRateLimits(PacketRateLimiter.Settings rateLimits) {
+        this.rateLimits = rateLimits;
+    }
+
+    /**
+     * Set the functions that are used to get the key of each packet
+     * class that should be coalesced. When multiple packets with the
+     * same key are sent to a connection during a single tick, only the
+     * last one is actually sent at the end of the tick.
+     * <p>
+     * The chunk function gets the chunks that a packet changes blocks
+     * in. Before a packet that changes blocks is sent, any coalesced
+     * packets that change blocks in the same chunks are sent first.
+     *
+     * @param coalesceKeys The key functions for each packet class
+     *                     or {@code null} to not coalesce any packets.
+     * @param coalesceChunks The function to get the chunks that a packet
+     *                       changes blocks in or {@code null} for none.
+     */
+    public void setCoalesceKeys(Map<Class<?>, Function<Packet, Object>> coalesceKeys,
+                                Function<Packet, long[]> coalesceChunks) {
+
+        this.coalesceKeys = coalesceKeys;
+        this.coalesceChunks = coalesceChunks;
+        synchronized (this.networkManagers) {
+
+            for (NetworkManager manager : this.networkManagers) {
+                NetworkManagerProxy proxy = (NetworkManagerProxy) manager;
+                proxy.coalesceChunks = coalesceChunks;
+                proxy.coalesceKeys = coalesceKeys;
+            }
+        }
+    }
+
+    /**
+     * Set the {@link BiFunction connection listener} for this
+     * server connection that will be used for every network manager
+     * and packets will be sent to before a player has been created
+     * for the connection (i.e. during the {@code Handshaking},
+     * {@code Status} and {@code Login} protocols).
+     * <p>
+     * The connection listener is subject to the same packet filter
+     * as the {@link #setPacketListener(BiFunction, BiFunction, BiPredicate) packet listeners}.
+     *
+     * @param connectionListener The listener to set to.
+     */
+    public void setConnectionListener(BiFunction<NetworkManagerProxy, Packet, Packet> connectionListener) {
+
+        this.connectionListener = connectionListener;
+        synchronized (this.networkManagers) {
+
+            for (NetworkManager manager : this.networkManagers) {
+                ((NetworkManagerProxy) manager).connectionListener = connectionListener;
+            }
+        }
+    }
+
     /**
-     * Set the {@link BiFunction packet listener} for this
+     * Set the {@link BiFunction packet listeners} for this
      * server connection that will be used for every network
-     * manager and packets will be sent to.
+     * manager and packets will be sent to. Packets received
+     * from the client are passed to the inbound listener and
+     * packets sent to the client to the outbound listener.
+     * <p>
+     * The {@link BiPredicate packet filter} is tested with the UUID
+     * of the player of the connection (or {@code null} if it is not
+     * known yet) and the class of every packet before anything else
+     * is done. If it returns {@code false}, then the packet is passed
+     * straight through without resolving the player or calling the
+     * listener.
      *
-     * @param packetListener The listener to set to.
+     * @param inboundListener The listener for received packets to set to.
+     * @param outboundListener The listener for sent packets to set to.
+     * @param packetFilter The filter for packet classes that
+     *                     should be passed to the listeners.
      */
-    public void setPacketListener(BiFunction<Player, Packet, Packet> packetListener) {
+    public void setPacketListener(BiFunction<Player, Packet, Packet> inboundListener,
+                                  BiFunction<Player, Packet, Packet> outboundListener, BiPredicate<UUID, Class<?>> packetFilter) {
 
-        this.packetListener = packetListener;
+        this.inboundListener = inboundListener;
+        this.outboundListener = outboundListener;
+        this.packetFilter = packetFilter;
         synchronized (this.networkManagers) {
 
             for (NetworkManager manager : this.networkManagers) {
-                ((NetworkManagerProxy) manager).packetListener = packetListener;
+                NetworkManagerProxy proxy = (NetworkManagerProxy) manager;
+                proxy.packetFilter = packetFilter;
+                proxy.inboundListener = inboundListener;
+                proxy.outboundListener = outboundListener;
             }
         }
     }
@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Andavin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.andavin.v1_13_R2.inject.injectors;
+
+import com.andavin.inject.mixin.Inject;
+import com.andavin.inject.mixin.Mixin;
+import com.andavin.inject.mixin.Redirect;
+import com.andavin.tick.TickProfiler;
+import com.andavin.tick.TickProfiler.Phase;
+import net.minecraft.server.v1_13_R2.MinecraftServer;
+import net.minecraft.server.v1_13_R2.ServerConnection;
+import net.minecraft.server.v1_13_R2.WorldServer;
+import org.bukkit.craftbukkit.v1_13_R2.scheduler.CraftScheduler;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Times the tick loop of the {@link MinecraftServer} and each
+ * of its {@link Phase phases} with the {@link TickProfiler}.
+ * <p>
+ * Every handler only forwards to the {@link TickProfiler} or the
+ * {@link TickProfilerHooks}, so nothing is added to the server and
+ * it can be retransformed while it is already loaded.
+ *
+ * @since August 01, 2019
+ * @author Andavin
+ */
+@Mixin(value = MinecraftServer.class, version = "1.0")
+abstract class TickProfilerMixin {
+
+    private static final String TICK = "a(Ljava/util/function/BooleanSupplier;)V", WORLD_TICK = "b(Ljava/util/function/BooleanSupplier;)V";
+
+    @Inject(method = TICK, at = Inject.At.HEAD)
+    private static void startTick() {
+        TickProfiler.startTick();
+    }
+
+    @Inject(method = TICK, at = Inject.At.RETURN)
+    private static void endTick() {
+        TickProfiler.endTick();
+    }
+
+    @Redirect(method = WORLD_TICK, target = "net/minecraft/server/v1_13_R2/WorldServer.doTick(Ljava/util/function/BooleanSupplier;)V")
+    private static void tickWorld(WorldServer world, BooleanSupplier hasTimeLeft) {
+        TickProfilerHooks.tickWorld(world, hasTimeLeft);
+    }
+
+    @Redirect(method = WORLD_TICK, target = "net/minecraft/server/v1_13_R2/WorldServer.tickEntities()V")
+    private static void tickEntities(WorldServer world) {
+        TickProfilerHooks.tickEntities(world);
+    }
+
+    @Redirect(method = WORLD_TICK, target = "net/minecraft/server/v1_13_R2/ServerConnection.c()V")
+    private static void tickNetwork(ServerConnection connection) {
+        TickProfilerHooks.tickNetwork(connection);
+    }
+
+    @Redirect(method = WORLD_TICK, target = "org/bukkit/craftbukkit/v1_13_R2/scheduler/CraftScheduler.mainThreadHeartbeat(I)V")
+    private static void tickScheduler(CraftScheduler scheduler, int currentTick) {
+        TickProfilerHooks.tickScheduler(scheduler, currentTick);
+    }
+}
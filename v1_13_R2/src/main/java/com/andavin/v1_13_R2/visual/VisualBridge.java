@@ -24,6 +24,8 @@
 
 package com.andavin.v1_13_R2.visual;
 
+import com.andavin.protocol.PacketAccessor;
+import com.andavin.reflect.FieldAccessor;
 import com.andavin.visual.block.VisualBlock;
 import net.minecraft.server.v1_13_R2.*;
 import net.minecraft.server.v1_13_R2.PacketPlayOutMultiBlockChange.MultiBlockChangeInfo;
@@ -33,33 +35,27 @@ import org.bukkit.block.data.BlockData;
 import org.bukkit.block.data.Directional;
 import org.bukkit.block.data.Rail;
 import org.bukkit.craftbukkit.v1_13_R2.block.data.CraftBlockData;
-import org.bukkit.entity.Player;
 import org.bukkit.material.ExtendedRails;
 import org.bukkit.material.Rails;
 import org.bukkit.material.Tree;
 
-import java.lang.reflect.Field;
 import java.util.List;
 
-import static com.andavin.protocol.PacketSender.sendPacket;
-import static com.andavin.reflect.Reflection.findField;
-import static com.andavin.reflect.Reflection.setFieldValue;
-
 /**
  * @since November 15, 2018
  * @author Andavin
  */
 class VisualBridge extends com.andavin.visual.VisualBridge {
 
-    private static final Field CHUNK = findField(PacketPlayOutMultiBlockChange.class, "a");
-    private static final Field PACKET_BLOCK_DATA = findField(PacketPlayOutMultiBlockChange.class, "b");
-    private static final Field POSITION = findField(PacketPlayOutBlockChange.class, "a");
+    private static final FieldAccessor<Object> CHUNK = PacketAccessor.of(PacketPlayOutMultiBlockChange.class).field("a");
+    private static final FieldAccessor<Object> PACKET_BLOCK_DATA = PacketAccessor.of(PacketPlayOutMultiBlockChange.class).field("b");
+    private static final FieldAccessor<Object> POSITION = PacketAccessor.of(PacketPlayOutBlockChange.class).field("a");
 
     @Override
-    protected void sendBlocks(Player player, Object chunkPair, List<VisualBlock> blocks) {
+    protected Object createPacket(Object chunkPair, List<VisualBlock> blocks) {
 
         if (blocks.isEmpty()) {
-            return;
+            return null;
         }
 
         // If there is only a single block to send then send
@@ -67,26 +63,24 @@ class VisualBridge extends com.andavin.visual.VisualBridge {
         if (blocks.size() == 1) {
             VisualBlock block = blocks.get(0);
             PacketPlayOutBlockChange packet = new PacketPlayOutBlockChange();
-            setFieldValue(POSITION, packet, new BlockPosition(block.getX(), block.getY(), block.getZ())); // Set the position
+            POSITION.set(packet, new BlockPosition(block.getX(), block.getY(), block.getZ())); // Set the position
             packet.block = toData(block); // And the data
-            sendPacket(player, packet);
-            return;
+            return packet;
         }
 
         // There are multiple here so send a PacketPlayOutMultiBlockChange packet
         PacketPlayOutMultiBlockChange packet = new PacketPlayOutMultiBlockChange();
         MultiBlockChangeInfo[] blockData = new MultiBlockChangeInfo[blocks.size()];
 
-        setFieldValue(CHUNK, packet, chunkPair); // Set the chunk that it is in
-        setFieldValue(PACKET_BLOCK_DATA, packet, blockData); // Place the array into the packet
+        CHUNK.set(packet, chunkPair); // Set the chunk that it is in
+        PACKET_BLOCK_DATA.set(packet, blockData); // Place the array into the packet
         // Then update the array with all of the data and positions
         int i = 0;
         for (VisualBlock block : blocks) {
             blockData[i++] = packet.new MultiBlockChangeInfo(block.getPackedPosition(), toData(block));
         }
 
-        // Send the packet to the player
-        sendPacket(player, packet);
+        return packet;
     }
 
     @Override